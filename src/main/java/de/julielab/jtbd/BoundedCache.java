@@ -0,0 +1,182 @@
+/**
+ * BoundedCache.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * A size-bounded cache which may be used by several threads. The entries
+ * are spread over a number of segments which are locked independently;
+ * each segment evicts its least recently used entry when it is full. Hits,
+ * misses and evictions are counted.
+ **/
+
+package de.julielab.jtbd;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BoundedCache<K, V> {
+
+	private static final int MAX_SEGMENTS = 16;
+
+	private final int maxSize;
+
+	private final ArrayList<Segment> segments;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxSize
+	 *            maximal number of entries, must be positive
+	 */
+	public BoundedCache(int maxSize) {
+		if (maxSize <= 0)
+			throw new IllegalArgumentException(
+					"cache size must be positive, got " + maxSize);
+		this.maxSize = maxSize;
+
+		// at least 16 entries per segment
+		int nrSegments = Math.max(1, Math.min(MAX_SEGMENTS, maxSize / 16));
+		segments = new ArrayList<Segment>(nrSegments);
+		for (int i = 0; i < nrSegments; i++) {
+			// distribute maxSize over the segments
+			int capacity = maxSize / nrSegments
+					+ (i < maxSize % nrSegments ? 1 : 0);
+			segments.add(new Segment(capacity));
+		}
+	}
+
+	/**
+	 * A segment of the cache, an access-ordered map which removes its eldest
+	 * entry when it grows beyond its capacity. Must be synchronized on.
+	 */
+	private class Segment extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			if (size() > capacity) {
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private Segment segmentFor(Object key) {
+		// spread the hash bits, as in java.util.HashMap
+		int h = key.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return segments.get((h & 0x7fffffff) % segments.size());
+	}
+
+	/**
+	 * @return the cached value or null if there is none
+	 */
+	public V get(K key) {
+		Segment segment = segmentFor(key);
+		V value;
+		synchronized (segment) {
+			value = segment.get(key);
+		}
+		if (value == null)
+			misses.incrementAndGet();
+		else
+			hits.incrementAndGet();
+		return value;
+	}
+
+	/**
+	 * adds a value to the cache, possibly evicting the least recently used
+	 * entry of its segment
+	 */
+	public void put(K key, V value) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, value);
+		}
+	}
+
+	/**
+	 * removes all entries, the statistics are kept
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * sets hits, misses and evictions to zero
+	 */
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return hits / (hits + misses), 0 if there were no requests
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long requests = h + misses.get();
+		return requests == 0 ? 0 : (double) h / requests;
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + size() + "/" + maxSize + ", hits=" + getHits()
+				+ ", misses=" + getMisses() + ", evictions=" + getEvictions()
+				+ ", hit rate=" + getHitRate();
+	}
+}
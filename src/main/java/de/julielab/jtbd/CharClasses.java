@@ -0,0 +1,188 @@
+/**
+ * CharClasses.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * The character classes used by the unit splitter and the feature scanner,
+ * precomputed for all Unicode code points (BMP and supplementary planes).
+ * The table is split into pages of 256 code points; pages with the same
+ * content are shared, and a lookup is two array accesses for any script.
+ * The pages of the supplementary planes are made on first use. Measured
+ * with the Unicode tables of Java 17, the BMP has 52 distinct pages, about
+ * 28 KB with the page index, and the supplementary planes add 69 pages,
+ * about 53 KB.
+ *
+ * The classes are those of the features of the trained models, e.g. CAPS
+ * and LOW are still the letters of Sentence2TokenPipe.CAPS and LOW, so
+ * that the features do not change.
+ **/
+
+package de.julielab.jtbd;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+final class CharClasses {
+
+	static final int CAPS = 1; // Sentence2TokenPipe.CAPS
+	static final int LOW = 1 << 1; // Sentence2TokenPipe.LOW
+	static final int DIGIT = 1 << 2; // [0-9]
+	static final int WORD = 1 << 3; // \w
+	static final int ROMAN = 1 << 4; // [IVXDLCM]
+	static final int LINE_TERMINATOR = 1 << 5; // not matched by '.'
+	static final int LETTER_OR_DIGIT = 1 << 6; // Character.isLetterOrDigit()
+	static final int BOUNDARY_WORD = 1 << 7; // word character of '\b'
+	static final int NON_SPACING_MARK = 1 << 8; // Unicode category Mn
+	static final int WHITE_SPACE = 1 << 9; // \s
+	static final int DASH = 1 << 10; // Unicode category Pd
+
+	private static final int PAGE_BITS = 8;
+
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+	private static final int BMP_PAGES = 0x10000 >> PAGE_BITS;
+
+	// the pages of the BMP by the upper bits of the code point
+	private static final char[][] PAGES;
+
+	static {
+		// the classes of the Latin-1 characters which are defined by
+		// character lists
+		char[] latin1 = new char[PAGE_SIZE];
+		addClass(latin1, Sentence2TokenPipe.CAPS, CAPS);
+		addClass(latin1, Sentence2TokenPipe.LOW, LOW);
+		addClass(latin1, "0-9", DIGIT);
+		addClass(latin1, "a-zA-Z_0-9", WORD);
+		addClass(latin1, "IVXDLCM", ROMAN);
+		addClass(latin1, "_", BOUNDARY_WORD);
+		addClass(latin1, " \t\n\013\f\r", WHITE_SPACE);
+		PAGES = makePages(0, BMP_PAGES, latin1);
+	}
+
+	/**
+	 * The pages of the supplementary planes, they are only made when such a
+	 * code point is looked up first.
+	 */
+	private static class SupplementaryPages {
+		static final char[][] PAGES = makePages(BMP_PAGES,
+				(Character.MAX_CODE_POINT + 1) >> PAGE_BITS, null);
+	}
+
+	private CharClasses() {
+	}
+
+	/**
+	 * adds the characters of a regular expression character class body
+	 * (single characters and ranges like "a-z") to a class
+	 */
+	private static void addClass(char[] page, String chars, int cls) {
+		for (int i = 0; i < chars.length(); i++) {
+			char from = chars.charAt(i);
+			char to = from;
+			if (i + 2 < chars.length() && chars.charAt(i + 1) == '-') {
+				to = chars.charAt(i + 2);
+				i += 2;
+			}
+			for (char c = from; c <= to; c++)
+				page[c] |= cls;
+		}
+	}
+
+	/**
+	 * makes the pages of a range of code points, pages with the same content
+	 * are shared
+	 * 
+	 * @param first
+	 *            the content of the first page which is already known, may
+	 *            be null
+	 */
+	private static char[][] makePages(int from, int to, char[] first) {
+		char[][] pages = new char[to - from][];
+		HashMap<String, char[]> distinctPages = new HashMap<String, char[]>();
+		char[] page = first;
+		for (int p = from; p < to; p++) {
+			if (page == null)
+				page = new char[PAGE_SIZE];
+			addClasses(page, p);
+			// most pages are the same as the previous one (e.g. unassigned)
+			if (p > from && Arrays.equals(page, pages[p - from - 1])) {
+				pages[p - from] = pages[p - from - 1];
+				Arrays.fill(page, (char) 0);
+				continue;
+			}
+			String key = new String(page);
+			char[] shared = distinctPages.get(key);
+			if (shared == null) {
+				shared = page;
+				distinctPages.put(key, page);
+				page = null;
+			} else {
+				Arrays.fill(page, (char) 0);
+			}
+			pages[p - from] = shared;
+		}
+		return pages;
+	}
+
+	/**
+	 * adds the classes which are defined by Unicode properties to a page
+	 */
+	private static void addClasses(char[] page, int p) {
+		for (int i = 0; i < PAGE_SIZE; i++)
+			page[i] |= computeClass((p << PAGE_BITS) + i);
+	}
+
+	/**
+	 * the classes which are defined by Unicode properties
+	 */
+	private static int computeClass(int c) {
+		int cls = 0;
+		if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028'
+				|| c == '\u2029')
+			cls |= LINE_TERMINATOR;
+		// the categories of Character.isLetterOrDigit()
+		switch (Character.getType(c)) {
+		case Character.UPPERCASE_LETTER:
+		case Character.LOWERCASE_LETTER:
+		case Character.TITLECASE_LETTER:
+		case Character.MODIFIER_LETTER:
+		case Character.OTHER_LETTER:
+		case Character.DECIMAL_DIGIT_NUMBER:
+			cls |= LETTER_OR_DIGIT | BOUNDARY_WORD;
+			break;
+		case Character.NON_SPACING_MARK:
+			cls |= NON_SPACING_MARK;
+			break;
+		case Character.DASH_PUNCTUATION:
+			cls |= DASH;
+			break;
+		}
+		return cls;
+	}
+
+	/**
+	 * @param c
+	 *            a code point
+	 * @return the classes of the code point
+	 */
+	static int of(int c) {
+		if (c < Character.MIN_SUPPLEMENTARY_CODE_POINT)
+			return PAGES[c >>> PAGE_BITS][c & (PAGE_SIZE - 1)];
+		return SupplementaryPages.PAGES[(c >>> PAGE_BITS) - BMP_PAGES][c
+				& (PAGE_SIZE - 1)];
+	}
+
+	/**
+	 * @return the classes of a character
+	 */
+	static int of(char c) {
+		return PAGES[c >>> PAGE_BITS][c & (PAGE_SIZE - 1)];
+	}
+}
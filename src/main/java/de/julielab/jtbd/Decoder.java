@@ -0,0 +1,806 @@
+/**
+ * Decoder.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * Viterbi decoding on the parameters of a trained CRF. In contrast to
+ * CRF.transduce(), the scores of the transitions at a position are computed
+ * separately (see score()), so that they can be reused for units which
+ * occur in the same context.
+ *
+ * The weights of the CRF are flattened into one array at construction, so
+ * that scoring a position is a single pass over its features. The array
+ * has a row of weights for each feature, or only for the features with a
+ * weight if they are few of all, e.g. with hashed features (see
+ * HashedAlphabet), whose rows are then found by a hash table. Models with
+ * the two states P and N, which is what training makes, are decoded by a
+ * dedicated loop without a lattice. Scores and ties are treated as by
+ * CRF.transduce() (MaxLatticeDefault), so the labels are the same.
+ *
+ * Several sentences can be decoded together (see decode(double[][][],
+ * boolean[][], UnitBuffer[])): sentences of similar length are then decoded in lockstep,
+ * one position of all sentences after the other. The recurrences of the
+ * sentences are independent, so the processor can work on several of them
+ * at once instead of waiting for the result of the previous position.
+ *
+ * For inference, the feature weights can be kept with less precision (see
+ * quantize()): as floats or as bytes with a scale per block of weights.
+ * Initial, final and default weights always keep full precision. A
+ * quantized decoder is serializable, so it can be stored without the CRF
+ * (see QuantizedModel).
+ *
+ * The labels of some positions can be fixed to P (see decode()), e.g. those
+ * of units followed by white space. The best labeling is then found among
+ * the labelings with these labels: a fixed position splits the lattice into
+ * independent parts, and the scores of a fixed position after a fixed
+ * position are not needed at all.
+ **/
+
+package de.julielab.jtbd;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.fst.Transducer;
+import cc.mallet.types.FeatureVector;
+import cc.mallet.types.SparseVector;
+
+class Decoder implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	// bits per feature weight: as trained, as float and as byte
+	static final int DOUBLE_BITS = 64;
+
+	static final int FLOAT_BITS = 32;
+
+	static final int BYTE_BITS = 8;
+
+	// number of byte weights which share a scale
+	private static final int BLOCK_BITS = 6;
+
+	// the largest size of an array
+	private static final int MAX_WEIGHTS = Integer.MAX_VALUE - 8;
+
+	// number of sentences to decode in lockstep, their scores should fit
+	// into the processor caches
+	static final int BATCH_SIZE = 16;
+
+	private final int numStates;
+
+	private final double[] initialWeights;
+
+	private final double[] finalWeights;
+
+	// index of the first transition of each state in the score arrays
+	private final int[] offsets;
+
+	private final int numTransitions;
+
+	// per transition: source state, destination state and label
+	private final int[] sources;
+
+	private final int[] destinations;
+
+	private final String[] labels;
+
+	private final byte[] labelCodes;
+
+	// the weight sets of the transitions are numbered by their first use,
+	// the weight sets of transition t are slots[slotOffsets[t]] to
+	// slots[slotOffsets[t + 1] - 1]
+	private final int[] slotOffsets;
+
+	private final int[] slots;
+
+	private final int numWeightSets;
+
+	// the weight of the feature of row r in weight set k is at
+	// r * numWeightSets + k, only one of the arrays is used depending on the
+	// precision
+	private final double[] featureWeights;
+
+	private final float[] floatWeights;
+
+	// a byte weight is the weight divided by the scale of its block
+	private final byte[] byteWeights;
+
+	private final float[] blockScales;
+
+	private final int weightBits;
+
+	private final int numFeatures;
+
+	// the feature of each row, null if row f is feature f; then there is a
+	// row for each feature
+	private final int[] rowFeatures;
+
+	// the rows by the hash of their feature (see getRow()), row + 1 or 0
+	// for an empty entry
+	private final int[] rowTable;
+
+	private final int rowShift;
+
+	private final int numRows;
+
+	private final double[] defaultWeights;
+
+	// for two states: the transition from state s to state d is
+	// twoStateTransitions[2 * s + d], null if the model has other states
+	private final int[] twoStateTransitions;
+
+	// the state of the label P and the transition from it to itself, -1 if
+	// the labels of positions cannot be fixed, see canFixBoundaries()
+	private final int boundaryState;
+
+	private final int boundaryTransition;
+
+	Decoder(CRF crf) {
+		CRF.Factors parameters = crf.getParameters();
+
+		numStates = crf.numStates();
+		initialWeights = new double[numStates];
+		finalWeights = new double[numStates];
+		offsets = new int[numStates + 1];
+		for (int s = 0; s < numStates; s++) {
+			CRF.State state = (CRF.State) crf.getState(s);
+			initialWeights[s] = state.getInitialWeight();
+			finalWeights[s] = state.getFinalWeight();
+			offsets[s + 1] = offsets[s] + state.numDestinations();
+		}
+
+		numTransitions = offsets[numStates];
+		sources = new int[numTransitions];
+		destinations = new int[numTransitions];
+		labels = new String[numTransitions];
+		labelCodes = new byte[numTransitions];
+		slotOffsets = new int[numTransitions + 1];
+		int[] weightSets = new int[parameters.weights.length];
+		Arrays.fill(weightSets, -1);
+		int[] usedWeightSets = new int[parameters.weights.length];
+		int[] slotList = new int[16];
+		int n = 0;
+		int k = 0;
+		for (int s = 0; s < numStates; s++) {
+			CRF.State state = (CRF.State) crf.getState(s);
+			for (int d = 0; d < state.numDestinations(); d++) {
+				int t = offsets[s] + d;
+				sources[t] = s;
+				destinations[t] = state.getDestinationState(d).getIndex();
+				labels[t] = state.getLabelName(d);
+				labelCodes[t] = UnitBuffer.getLabel(labels[t]);
+				for (String name : state.getWeightNames(d)) {
+					int swi = parameters.weightAlphabet.lookupIndex(name, false);
+					if (weightSets[swi] < 0) {
+						weightSets[swi] = k;
+						usedWeightSets[k++] = swi;
+					}
+					if (n == slotList.length)
+						slotList = Arrays.copyOf(slotList, 2 * n);
+					slotList[n++] = weightSets[swi];
+				}
+				slotOffsets[t + 1] = n;
+			}
+		}
+		slots = Arrays.copyOf(slotList, n);
+		numWeightSets = k;
+
+		// the features with a weight, a dense array for all features would
+		// be too large for hashed features
+		int[] features = getFeatures(parameters, usedWeightSets, numWeightSets);
+		numFeatures = features.length == 0 ? 0
+				: features[features.length - 1] + 1;
+		if (features.length >= numFeatures / 2
+				&& (long) numFeatures * numWeightSets <= MAX_WEIGHTS) {
+			rowFeatures = null;
+			rowTable = null;
+			rowShift = 0;
+			numRows = numFeatures;
+		} else {
+			if ((long) features.length * numWeightSets > MAX_WEIGHTS
+					|| features.length > 1 << 29)
+				throw new IllegalArgumentException("the CRF has "
+						+ features.length + " features with " + numWeightSets
+						+ " weight sets, too many weights for an array");
+			rowFeatures = features;
+			numRows = features.length;
+			// the table has a power of two entries and is at most half full
+			int tableBits = 32 - Integer.numberOfLeadingZeros(numRows) + 1;
+			rowShift = 32 - tableBits;
+			rowTable = new int[1 << tableBits];
+			for (int r = 0; r < numRows; r++) {
+				int h = hashRow(features[r]);
+				while (rowTable[h] != 0)
+					h = (h + 1) & (rowTable.length - 1);
+				rowTable[h] = r + 1;
+			}
+		}
+		weightBits = DOUBLE_BITS;
+		floatWeights = null;
+		byteWeights = null;
+		blockScales = null;
+		featureWeights = new double[numRows * numWeightSets];
+		defaultWeights = new double[numWeightSets];
+		for (k = 0; k < numWeightSets; k++) {
+			SparseVector weights = parameters.weights[usedWeightSets[k]];
+			for (int l = 0; l < weights.numLocations(); l++)
+				featureWeights[getRow(weights.indexAtLocation(l))
+						* numWeightSets + k] = weights.valueAtLocation(l);
+			defaultWeights[k] = parameters.defaultWeights[usedWeightSets[k]];
+		}
+
+		twoStateTransitions = getTwoStateTransitions();
+		boundaryState = getBoundaryState();
+		int transition = -1;
+		for (int t = 0; boundaryState >= 0 && t < numTransitions; t++)
+			if (sources[t] == boundaryState && destinations[t] == boundaryState)
+				transition = t;
+		boundaryTransition = transition;
+	}
+
+	/**
+	 * makes a copy of a decoder with feature weights of less precision
+	 */
+	private Decoder(Decoder decoder, int weightBits) {
+		numStates = decoder.numStates;
+		initialWeights = decoder.initialWeights;
+		finalWeights = decoder.finalWeights;
+		offsets = decoder.offsets;
+		numTransitions = decoder.numTransitions;
+		sources = decoder.sources;
+		destinations = decoder.destinations;
+		labels = decoder.labels;
+		labelCodes = decoder.labelCodes;
+		slotOffsets = decoder.slotOffsets;
+		slots = decoder.slots;
+		numWeightSets = decoder.numWeightSets;
+		numFeatures = decoder.numFeatures;
+		rowFeatures = decoder.rowFeatures;
+		rowTable = decoder.rowTable;
+		rowShift = decoder.rowShift;
+		numRows = decoder.numRows;
+		defaultWeights = decoder.defaultWeights;
+		twoStateTransitions = decoder.twoStateTransitions;
+		boundaryState = decoder.boundaryState;
+		boundaryTransition = decoder.boundaryTransition;
+		this.weightBits = weightBits;
+
+		int n = numRows * numWeightSets;
+		featureWeights = null;
+		if (weightBits == FLOAT_BITS) {
+			floatWeights = new float[n];
+			for (int i = 0; i < n; i++)
+				floatWeights[i] = (float) decoder.getWeight(i);
+			byteWeights = null;
+			blockScales = null;
+		} else {
+			floatWeights = null;
+			byteWeights = new byte[n];
+			blockScales = new float[(n + (1 << BLOCK_BITS) - 1) >> BLOCK_BITS];
+			for (int block = 0; block < blockScales.length; block++) {
+				int from = block << BLOCK_BITS;
+				int to = Math.min(n, from + (1 << BLOCK_BITS));
+				double max = 0;
+				for (int i = from; i < to; i++)
+					max = Math.max(max, Math.abs(decoder.getWeight(i)));
+				blockScales[block] = (float) (max / Byte.MAX_VALUE);
+				if (max == 0)
+					continue;
+				for (int i = from; i < to; i++)
+					byteWeights[i] = (byte) Math.round(decoder.getWeight(i)
+							/ blockScales[block]);
+			}
+		}
+	}
+
+	/**
+	 * @param weightBits
+	 *            FLOAT_BITS or BYTE_BITS
+	 * @return a decoder whose feature weights have the given precision
+	 * @throws IllegalArgumentException
+	 *             if the precision is not supported or not less than the
+	 *             precision of this decoder
+	 */
+	Decoder quantize(int weightBits) {
+		if (weightBits != FLOAT_BITS && weightBits != BYTE_BITS)
+			throw new IllegalArgumentException("weights have " + FLOAT_BITS
+					+ " or " + BYTE_BITS + " bits, got " + weightBits);
+		if (weightBits >= this.weightBits)
+			throw new IllegalArgumentException("weights have " + this.weightBits
+					+ " bits, cannot be stored with " + weightBits);
+		return new Decoder(this, weightBits);
+	}
+
+	/**
+	 * @return the number of bits of the feature weights
+	 */
+	int getWeightBits() {
+		return weightBits;
+	}
+
+	/**
+	 * @return the number of bytes of the feature weights (and block scales
+	 *         and the rows of the features, if any)
+	 */
+	long getWeightsSize() {
+		long rows = rowFeatures == null ? 0 : 4L * rowFeatures.length + 4L
+				* rowTable.length;
+		if (featureWeights != null)
+			return rows + 8L * featureWeights.length;
+		if (floatWeights != null)
+			return rows + 4L * floatWeights.length;
+		return rows + byteWeights.length + 4L * blockScales.length;
+	}
+
+	/**
+	 * @return the features with a weight in the used weight sets, sorted
+	 */
+	private static int[] getFeatures(CRF.Factors parameters,
+			int[] usedWeightSets, int numWeightSets) {
+		long size = 0;
+		for (int k = 0; k < numWeightSets; k++)
+			size += parameters.weights[usedWeightSets[k]].numLocations();
+		if (size > MAX_WEIGHTS)
+			throw new IllegalArgumentException("the CRF has " + size
+					+ " weights, too many for an array");
+		int[] features = new int[(int) size];
+		int n = 0;
+		for (int k = 0; k < numWeightSets; k++) {
+			SparseVector weights = parameters.weights[usedWeightSets[k]];
+			for (int l = 0; l < weights.numLocations(); l++)
+				features[n++] = weights.indexAtLocation(l);
+		}
+		Arrays.sort(features);
+		int distinct = 0;
+		for (int i = 0; i < n; i++)
+			if (distinct == 0 || features[i] != features[distinct - 1])
+				features[distinct++] = features[i];
+		return Arrays.copyOf(features, distinct);
+	}
+
+	/**
+	 * @return the entry of the row table where the search for the row of a
+	 *         feature starts
+	 */
+	private int hashRow(int feature) {
+		return (feature * 0x9e3779b9) >>> rowShift;
+	}
+
+	/**
+	 * @return the row of the weights of a feature less than numFeatures, -1
+	 *         if the feature has no weight
+	 */
+	private int getRow(int feature) {
+		if (rowFeatures == null)
+			return feature;
+		for (int h = hashRow(feature);; h = (h + 1) & (rowTable.length - 1)) {
+			int row = rowTable[h] - 1;
+			if (row < 0 || rowFeatures[row] == feature)
+				return row;
+		}
+	}
+
+	/**
+	 * @return the i-th entry of the flattened weights
+	 */
+	private double getWeight(int i) {
+		if (featureWeights != null)
+			return featureWeights[i];
+		if (floatWeights != null)
+			return floatWeights[i];
+		return byteWeights[i] * blockScales[i >> BLOCK_BITS];
+	}
+
+	/**
+	 * @return the transitions of a model with two fully connected states by
+	 *         source and destination, null for other models
+	 */
+	private int[] getTwoStateTransitions() {
+		if (numStates != 2 || numTransitions != 4)
+			return null;
+		int[] transitions = new int[4];
+		Arrays.fill(transitions, -1);
+		for (int t = 0; t < numTransitions; t++) {
+			if (transitions[2 * sources[t] + destinations[t]] >= 0)
+				return null;
+			transitions[2 * sources[t] + destinations[t]] = t;
+		}
+		return transitions;
+	}
+
+	/**
+	 * @return the state of the label P, i.e. the only destination of the
+	 *         transitions with this label, -1 if there is no such state
+	 */
+	private int getBoundaryState() {
+		int state = -1;
+		for (int t = 0; t < numTransitions; t++) {
+			if (labelCodes[t] != UnitBuffer.LABEL_P)
+				continue;
+			if (state >= 0 && destinations[t] != state)
+				return -1;
+			state = destinations[t];
+		}
+		for (int t = 0; state >= 0 && t < numTransitions; t++)
+			if (destinations[t] == state && labelCodes[t] != UnitBuffer.LABEL_P)
+				return -1;
+		return state;
+	}
+
+	/**
+	 * @return whether the labels of positions can be fixed to P when
+	 *         decoding, which needs a state for the label P with a
+	 *         transition to itself
+	 */
+	boolean canFixBoundaries() {
+		return boundaryTransition >= 0;
+	}
+
+	/**
+	 * @return whether a transition has the label
+	 */
+	boolean hasLabel(byte label) {
+		for (int t = 0; t < numTransitions; t++)
+			if (labelCodes[t] == label)
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return the transition scores of a position whose label is known: the
+	 *         transitions with the label have the score 0, the others are
+	 *         impossible; null if no transition has the label
+	 */
+	double[] getFixedScores(byte label) {
+		double[] scores = new double[numTransitions];
+		boolean found = false;
+		for (int t = 0; t < numTransitions; t++) {
+			if (labelCodes[t] == label)
+				found = true;
+			else
+				scores[t] = Transducer.IMPOSSIBLE_WEIGHT;
+		}
+		return found ? scores : null;
+	}
+
+	/**
+	 * @return the number of transitions, i.e. the length of the arrays
+	 *         returned by score()
+	 */
+	int numTransitions() {
+		return numTransitions;
+	}
+
+	/**
+	 * computes the scores of all transitions at a position, as CRF does
+	 *
+	 * @param fv
+	 *            the features at the position
+	 */
+	double[] score(FeatureVector fv) {
+		// the dot products of the weight sets with the features, summed up in
+		// the order of the features as SparseVector.dotProduct() does
+		double[] dotProducts = new double[numWeightSets];
+		for (int l = 0; l < fv.numLocations(); l++) {
+			int f = fv.indexAtLocation(l);
+			if (f >= numFeatures)
+				continue;
+			int row = getRow(f);
+			if (row < 0)
+				continue;
+			double value = fv.valueAtLocation(l);
+			int base = row * numWeightSets;
+			if (featureWeights != null)
+				for (int k = 0; k < numWeightSets; k++)
+					dotProducts[k] += featureWeights[base + k] * value;
+			else if (floatWeights != null)
+				for (int k = 0; k < numWeightSets; k++)
+					dotProducts[k] += floatWeights[base + k] * value;
+			else
+				for (int k = 0; k < numWeightSets; k++)
+					dotProducts[k] += byteWeights[base + k]
+							* blockScales[(base + k) >> BLOCK_BITS] * value;
+		}
+
+		double[] scores = new double[numTransitions];
+		for (int t = 0; t < numTransitions; t++) {
+			double score = 0;
+			for (int i = slotOffsets[t]; i < slotOffsets[t + 1]; i++)
+				score += dotProducts[slots[i]] + defaultWeights[slots[i]];
+			scores[t] = score;
+		}
+		return scores;
+	}
+
+	/**
+	 * finds the best labeling and sets the labels of the units
+	 *
+	 * @param scores
+	 *            the transition scores of each position, see score(). The
+	 *            scores of a boundary position after a boundary position may
+	 *            be null.
+	 * @param boundaries
+	 *            the positions whose label is P, null if no label is fixed,
+	 *            see canFixBoundaries()
+	 * @param units
+	 *            the units of the positions
+	 */
+	void decode(double[][] scores, boolean[] boundaries, List<Unit> units) {
+		int[] path = bestPath(scores, boundaries);
+		for (int i = 0; i < path.length; i++)
+			units.get(i).label = labels[path[i]];
+	}
+
+	/**
+	 * finds the best labeling and sets the labels in the buffer
+	 * 
+	 * @param scores
+	 *            the transition scores of each position, see score(). The
+	 *            scores of a boundary position after a boundary position may
+	 *            be null.
+	 * @param boundaries
+	 *            the positions whose label is P, null if no label is fixed,
+	 *            see canFixBoundaries()
+	 * @param units
+	 *            the units of the positions
+	 */
+	void decode(double[][] scores, boolean[] boundaries, UnitBuffer units) {
+		int[] path = bestPath(scores, boundaries);
+		for (int i = 0; i < path.length; i++)
+			units.setLabel(i, labelCodes[path[i]]);
+	}
+
+	/**
+	 * finds the best labeling of a segment of fixed positions and sets the
+	 * labels of its units in the buffer. The labels of a segment do not
+	 * depend on those of other segments, so they are the same as if the
+	 * whole sentence was decoded.
+	 * 
+	 * @param scores
+	 *            the transition scores of each position of the sentence, only
+	 *            those of the segment are used
+	 * @param from
+	 *            the first position of the segment, 0 or a position after a
+	 *            boundary
+	 * @param to
+	 *            the last position of the segment, a boundary or the last
+	 *            position of the sentence
+	 * @param boundaries
+	 *            the positions whose label is P, see canFixBoundaries()
+	 * @param units
+	 *            the units of the sentence
+	 */
+	void decode(double[][] scores, int from, int to, boolean[] boundaries,
+			UnitBuffer units) {
+		int[] path = bestPath(scores, from, to, boundaries);
+		for (int i = from; i <= to; i++)
+			units.setLabel(i, labelCodes[path[i - from]]);
+	}
+
+	/**
+	 * finds the best labelings of several sentences and sets the labels in
+	 * their buffers, as decode(double[][], boolean[], UnitBuffer) does for
+	 * each. The sentences are decoded in lockstep, so they should be few
+	 * (see BATCH_SIZE) and of similar length (see byDecreasingLength()).
+	 * 
+	 * @param scores
+	 *            the transition scores of each position of each sentence
+	 * @param boundaries
+	 *            the positions of each sentence whose label is P, null if no
+	 *            label is fixed
+	 * @param units
+	 *            the units of each sentence
+	 */
+	void decode(double[][][] scores, boolean[][] boundaries, UnitBuffer[] units) {
+		if (twoStateTransitions == null) {
+			for (int k = 0; k < scores.length; k++)
+				decode(scores[k], boundaries == null ? null : boundaries[k],
+						units[k]);
+			return;
+		}
+
+		int[][] paths = bestTwoStatePaths(scores, boundaries);
+		for (int k = 0; k < scores.length; k++)
+			for (int i = 0; i < paths[k].length; i++)
+				units[k].setLabel(i, labelCodes[paths[k][i]]);
+	}
+
+	/**
+	 * orders sentences for decode(double[][][], boolean[][], UnitBuffer[]),
+	 * so that sentences of similar length are decoded together
+	 * 
+	 * @param lengths
+	 *            the number of units of each sentence
+	 * @return the indices of the sentences by decreasing length
+	 */
+	static int[] byDecreasingLength(int[] lengths) {
+		long[] keys = new long[lengths.length];
+		for (int k = 0; k < lengths.length; k++)
+			keys[k] = ((long) (Integer.MAX_VALUE - lengths[k]) << 32) | k;
+		Arrays.sort(keys);
+		int[] order = new int[lengths.length];
+		for (int k = 0; k < lengths.length; k++)
+			order[k] = (int) keys[k];
+		return order;
+	}
+
+	/**
+	 * @return the transitions of the best labeling
+	 */
+	private int[] bestPath(double[][] scores, boolean[] boundaries) {
+		if (scores.length == 0)
+			return new int[0];
+		if (twoStateTransitions != null)
+			return bestTwoStatePaths(new double[][][] { scores },
+					boundaries == null ? null : new boolean[][] { boundaries })[0];
+		return bestPath(scores, 0, scores.length - 1, boundaries);
+	}
+
+	/**
+	 * @return the transitions of the best labeling of the positions from to
+	 *         to, the position before from (if any) has the label P
+	 */
+	private int[] bestPath(double[][] scores, int from, int to,
+			boolean[] boundaries) {
+		int n = scores.length;
+		int[] path = new int[to - from + 1];
+		double[] delta;
+		if (from == 0) {
+			delta = initialWeights.clone();
+		} else {
+			delta = new double[numStates];
+			Arrays.fill(delta, Transducer.IMPOSSIBLE_WEIGHT);
+			delta[boundaryState] = 0;
+		}
+		double[] next = new double[numStates];
+		// the best transition into each state at each position
+		int[][] backPointers = new int[path.length][numStates];
+
+		for (int i = from; i <= to; i++) {
+			Arrays.fill(next, Transducer.IMPOSSIBLE_WEIGHT);
+			if (scores[i] == null) {
+				// a boundary after a boundary, there is only one transition
+				next[boundaryState] = delta[boundaryState];
+				backPointers[i - from][boundaryState] = boundaryTransition;
+			} else {
+				for (int t = 0; t < numTransitions; t++) {
+					double w = delta[sources[t]] + scores[i][t];
+					// the final weights are added with the last transitions,
+					// as MaxLatticeDefault does
+					if (i == n - 1)
+						w += finalWeights[destinations[t]];
+					if (w > next[destinations[t]]) {
+						next[destinations[t]] = w;
+						backPointers[i - from][destinations[t]] = t;
+					}
+				}
+				if (boundaries != null && boundaries[i]) {
+					// the weight of a boundary is the same for all remaining
+					// labelings, so the next part starts over from 0 as if
+					// it was decoded alone
+					Arrays.fill(next, Transducer.IMPOSSIBLE_WEIGHT);
+					next[boundaryState] = 0;
+				}
+			}
+			double[] tmp = delta;
+			delta = next;
+			next = tmp;
+		}
+
+		int best = 0;
+		double bestWeight = Transducer.IMPOSSIBLE_WEIGHT;
+		for (int s = 0; s < numStates; s++) {
+			if (delta[s] > bestWeight) {
+				bestWeight = delta[s];
+				best = s;
+			}
+		}
+
+		for (int i = path.length - 1; i >= 0; i--) {
+			int t = backPointers[i][best];
+			path[i] = t;
+			best = sources[t];
+		}
+		return path;
+	}
+
+	/**
+	 * bestPath() for two fully connected states and several sentences: the
+	 * weights of both states are kept in arrays over the sentences and the
+	 * back pointers of a position in two bits. The sentences are decoded in
+	 * lockstep.
+	 * 
+	 * @param batch
+	 *            the transition scores of the sentences
+	 * @param boundaries
+	 *            the positions of each sentence whose label is P, may be null
+	 * @return the transitions of the best labeling of each sentence
+	 */
+	private int[][] bestTwoStatePaths(double[][][] batch, boolean[][] boundaries) {
+		int t00 = twoStateTransitions[0];
+		int t01 = twoStateTransitions[1];
+		int t10 = twoStateTransitions[2];
+		int t11 = twoStateTransitions[3];
+		int size = batch.length;
+		double[] delta0 = new double[size];
+		double[] delta1 = new double[size];
+		// bit d is set if the best transition into state d comes from state 1
+		byte[][] fromState1 = new byte[size][];
+		int maxLength = 0;
+		for (int b = 0; b < size; b++) {
+			delta0[b] = initialWeights[0];
+			delta1[b] = initialWeights[1];
+			fromState1[b] = new byte[batch[b].length];
+			maxLength = Math.max(maxLength, batch[b].length);
+		}
+		// the back pointers of a boundary after a boundary
+		byte fromBoundary = (byte) (boundaryState == 1 ? 3 : 0);
+
+		for (int i = 0; i < maxLength; i++) {
+			for (int b = 0; b < size; b++) {
+				if (i >= batch[b].length)
+					continue;
+				double[] s = batch[b][i];
+				if (s == null) {
+					// a boundary after a boundary, the weights stay as they
+					// are
+					fromState1[b][i] = fromBoundary;
+					continue;
+				}
+				double w00 = delta0[b] + s[t00];
+				double w10 = delta1[b] + s[t10];
+				double w01 = delta0[b] + s[t01];
+				double w11 = delta1[b] + s[t11];
+				if (i == batch[b].length - 1) {
+					w00 += finalWeights[0];
+					w10 += finalWeights[0];
+					w01 += finalWeights[1];
+					w11 += finalWeights[1];
+				}
+				// on ties, the transition from state 0 wins as it is seen
+				// first
+				byte from1 = 0;
+				if (w10 > w00) {
+					w00 = w10;
+					from1 |= 1;
+				}
+				if (w11 > w01) {
+					w01 = w11;
+					from1 |= 2;
+				}
+				fromState1[b][i] = from1;
+				delta0[b] = w00;
+				delta1[b] = w01;
+				if (boundaries != null && boundaries[b][i]) {
+					// starts over from 0, see bestPath()
+					delta0[b] = boundaryState == 0 ? 0
+							: Transducer.IMPOSSIBLE_WEIGHT;
+					delta1[b] = boundaryState == 1 ? 0
+							: Transducer.IMPOSSIBLE_WEIGHT;
+				}
+			}
+		}
+
+		int[][] paths = new int[size][];
+		for (int b = 0; b < size; b++) {
+			int n = batch[b].length;
+			paths[b] = new int[n];
+			int state = delta1[b] > delta0[b] ? 1 : 0;
+			for (int i = n - 1; i >= 0; i--) {
+				int source = (fromState1[b][i] >> state) & 1;
+				paths[b][i] = twoStateTransitions[2 * source + state];
+				state = source;
+			}
+		}
+		return paths;
+	}
+}
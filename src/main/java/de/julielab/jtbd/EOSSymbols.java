@@ -12,43 +12,49 @@
  *
  * Creation date: Aug 01, 2006 
  * 
- * A list of end-of-sentence symbols.
+ * A list of end-of-sentence symbols, looked up in a char-indexed table.
+ * Instances are immutable, getInstance() returns a shared one.
  **/
 
 package de.julielab.jtbd;
 
-import java.util.HashSet;
-
 public class EOSSymbols {
 
-	HashSet<Character> symbols;
+	private static final char[] SYMBOLS = { '.', ':', '!', '?', ']', ')',
+			'"' };
+
+	private static final EOSSymbols INSTANCE = new EOSSymbols();
+
+	// the symbols, indexed by character
+	private final boolean[] symbols;
 
 	public EOSSymbols() {
-		init();
+		char max = 0;
+		for (char c : SYMBOLS)
+			if (c > max)
+				max = c;
+		symbols = new boolean[max + 1];
+		for (char c : SYMBOLS)
+			symbols[c] = true;
 	}
 
-	private void init() {
-		symbols = new HashSet<Character>();
-		symbols.add('.');
-		symbols.add(':');
-		symbols.add('!');
-		symbols.add('?');
-		symbols.add(']');
-		symbols.add(')');
-		symbols.add('"');
+	/**
+	 * @return the shared instance
+	 */
+	public static EOSSymbols getInstance() {
+		return INSTANCE;
 	}
-	
+
+	public boolean contains(char c) {
+		return c < symbols.length && symbols[c];
+	}
+
 	public boolean contains(Character c) {
-		return symbols.contains(c);
+		return c != null && contains(c.charValue());
 	}
 	
 	public boolean tokenEndsWithEOSSymbol(String token) {
-		if (token.length()>0) {
-			Character lastChar = token.charAt(token.length() - 1);
-			if (symbols.contains(lastChar))
-				return true;
-		} 
-		return false;
+		return token.length() > 0 && contains(token.charAt(token.length() - 1));
 	}
 
 }
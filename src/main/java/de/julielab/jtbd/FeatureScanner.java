@@ -0,0 +1,488 @@
+/**
+ * FeatureScanner.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * Computes the boolean orthographic features of units and super-units
+ * in one scan over their characters. Each flag reproduces exactly one
+ * of the regular expressions Sentence2TokenPipe used to match,
+ * including the quirks of java.util.regex ('.' does not match line
+ * terminators, '\b' considers any Unicode letter or digit a word
+ * character), so that the resulting feature sets stay identical and
+ * previously trained models keep working.
+ **/
+
+package de.julielab.jtbd;
+
+final class FeatureScanner {
+
+	/*
+	 * unit features
+	 */
+	static final int U_ABBR1 = 1;
+	static final int U_ABBR2 = 1 << 1;
+	static final int U_ABBR3 = 1 << 2;
+	static final int U_INITCAPS = 1 << 3;
+	static final int U_ONECAPS = 1 << 4;
+	static final int U_ALLCAPS = 1 << 5;
+	static final int U_ALPHANUMERIC = 1 << 6;
+	static final int U_ROMAN = 1 << 7;
+	static final int U_HASROMAN = 1 << 8;
+	static final int U_NATURALNUMBER = 1 << 9;
+	static final int U_REALNUMBER = 1 << 10;
+	static final int U_HASDIGITS = 1 << 11;
+	static final int U_BEGINBRACKETS = 1 << 12;
+
+	/*
+	 * super-unit features
+	 */
+	static final int SU_IS_ALPHANUMERIC = 1;
+	// the four bracket features are mutually exclusive
+	static final int SU_IN_BRACKETS = 1 << 1;
+	static final int SU_HAS_CLOSED_BRACKETS = 1 << 2;
+	static final int SU_HAS_LEFT_BRACKET_ONLY = 1 << 3;
+	static final int SU_HAS_RIGHT_BRACKET_ONLY = 1 << 4;
+	// the super-unit contains an arrow; the unit itself has to be checked
+	// by the caller
+	static final int SU_HAS_ARROW = 1 << 5;
+	// the four dash features are mutually exclusive
+	static final int SU_IS_DOUBLE_DASH = 1 << 6;
+	static final int SU_HAS_DOUBLE_DASH = 1 << 7;
+	static final int SU_IS_DASH = 1 << 8;
+	static final int SU_HAS_DASH = 1 << 9;
+	static final int SU_HAS_PLUS_MINUS = 1 << 10;
+	static final int SU_PM_WITH_BRACKETS = 1 << 11;
+	static final int SU_IS_ENUMERATION = 1 << 12;
+	static final int SU_HAS_BRACKETED_PLURAL = 1 << 13;
+	static final int SU_HAS_GENITIVE = 1 << 14;
+	static final int SU_IS_CHEMICAL = 1 << 15;
+	// the two URL features are mutually exclusive
+	static final int SU_WWW_URL = 1 << 16;
+	static final int SU_HTTP_URL = 1 << 17;
+
+	/*
+	 * character classes, see CharClasses
+	 */
+	private static final int C_CAPS = CharClasses.CAPS;
+	private static final int C_LOW = CharClasses.LOW;
+	private static final int C_DIGIT = CharClasses.DIGIT;
+	private static final int C_WORD = CharClasses.WORD;
+	private static final int C_ROMAN = CharClasses.ROMAN;
+	private static final int C_LINE_TERMINATOR = CharClasses.LINE_TERMINATOR;
+
+	/*
+	 * brief word classes
+	 */
+	private static final char[] SHAPE_SYMBOLS = { 'A', 'a', '0', 'x' };
+
+	// brief word classes with up to this many runs are kept in SHAPES
+	private static final int MAX_SHAPE_RUNS = 7;
+
+	// the brief word classes by number of runs and the symbols of the runs
+	// (2 bits each), filled on demand
+	private static final String[] SHAPES = new String[shapeOffset(MAX_SHAPE_RUNS + 1)];
+
+	private FeatureScanner() {
+	}
+
+	private static int charClass(int c) {
+		return CharClasses.of(c);
+	}
+
+	/**
+	 * computes all boolean unit features
+	 *
+	 * @param unit
+	 * @return the U_* flags which apply to the unit
+	 */
+	static int scanUnit(String unit) {
+		int n = unit.length();
+		if (n == 0)
+			return 0;
+
+		boolean lineTerminator = false;
+		boolean hasLetter = false;
+		boolean hasDigit = false;
+		boolean allCaps = true;
+		boolean allRoman = true;
+		boolean allDigits = true;
+		boolean abbr2 = (n % 2 == 0);
+		boolean lowerBeforeDot = true;
+
+		// [-0-9]+[.,]+[0-9.,]+
+		boolean realNumber = true;
+		int firstSeparator = -1;
+
+		// \b[IVXDLCM]+\b: some maximal word is made up of roman digits only
+		boolean romanWord = false;
+		boolean inWord = false;
+		boolean wordIsRoman = false;
+		boolean baseIsLetterOrDigit = false;
+
+		for (int i = 0; i < n;) {
+			int c = unit.codePointAt(i);
+			int cls = charClass(c);
+
+			if ((cls & C_LINE_TERMINATOR) != 0)
+				lineTerminator = true;
+			if ((cls & (C_CAPS | C_LOW)) != 0)
+				hasLetter = true;
+			if ((cls & C_DIGIT) != 0)
+				hasDigit = true;
+			else
+				allDigits = false;
+			if ((cls & C_CAPS) == 0)
+				allCaps = false;
+			if ((cls & C_ROMAN) == 0)
+				allRoman = false;
+
+			if (abbr2) {
+				if (i % 2 == 0)
+					abbr2 = (cls & (C_CAPS | C_LOW)) != 0;
+				else
+					abbr2 = c == '.';
+			}
+			if (i < n - 1 && (cls & C_LOW) == 0)
+				lowerBeforeDot = false;
+
+			if (realNumber) {
+				if (c == '.' || c == ',') {
+					if (firstSeparator < 0)
+						firstSeparator = i;
+				} else if (c == '-') {
+					realNumber = firstSeparator < 0;
+				} else {
+					realNumber = (cls & C_DIGIT) != 0;
+				}
+			}
+
+			// non-spacing marks are word characters if their base character
+			// is a letter or digit
+			boolean word;
+			if ((cls & CharClasses.NON_SPACING_MARK) != 0) {
+				word = baseIsLetterOrDigit;
+			} else {
+				word = (cls & CharClasses.BOUNDARY_WORD) != 0;
+				baseIsLetterOrDigit = (cls & CharClasses.LETTER_OR_DIGIT) != 0;
+			}
+			if (word) {
+				if (!inWord)
+					wordIsRoman = true;
+				if ((cls & C_ROMAN) == 0)
+					wordIsRoman = false;
+			} else if (inWord && wordIsRoman) {
+				romanWord = true;
+			}
+			inWord = word;
+
+			i += Character.charCount(c);
+		}
+		if (inWord && wordIsRoman)
+			romanWord = true;
+
+		int first = charClass(unit.charAt(0));
+		char last = unit.charAt(n - 1);
+
+		int flags = 0;
+		if (n == 2 && (first & C_CAPS) != 0 && last == '.')
+			flags |= U_ABBR1;
+		if (abbr2)
+			flags |= U_ABBR2;
+		if (n > 1 && last == '.' && lowerBeforeDot)
+			flags |= U_ABBR3;
+		if ((first & C_CAPS) != 0 && !lineTerminator)
+			flags |= U_INITCAPS;
+		if (n == 1 && (first & C_CAPS) != 0)
+			flags |= U_ONECAPS;
+		if (allCaps)
+			flags |= U_ALLCAPS;
+		if (hasLetter && hasDigit && !lineTerminator)
+			flags |= U_ALPHANUMERIC;
+		if (allRoman)
+			flags |= U_ROMAN;
+		if (romanWord && !lineTerminator)
+			flags |= U_HASROMAN;
+		if (allDigits)
+			flags |= U_NATURALNUMBER;
+		if (realNumber && firstSeparator > 0 && n - firstSeparator > 1)
+			flags |= U_REALNUMBER;
+		if (hasDigit && !lineTerminator)
+			flags |= U_HASDIGITS;
+		if ((unit.charAt(0) == '(' || unit.charAt(0) == '[')
+				&& !lineTerminator)
+			flags |= U_BEGINBRACKETS;
+		return flags;
+	}
+
+	/**
+	 * computes all boolean super-unit features
+	 *
+	 * @param superUnit
+	 * @return the SU_* flags which apply to the super-unit
+	 */
+	static int scanSuperUnit(String superUnit) {
+		int n = superUnit.length();
+		if (n == 0)
+			return 0;
+
+		boolean lineTerminator = false;
+		boolean alphanumericBracket = false;
+		boolean leftParen = false;
+		boolean leftSquare = false;
+		boolean rightBracket = false;
+		boolean closedBrackets = false;
+		boolean arrow = false;
+		int dashes = 0;
+		int maxDashes = 0;
+		boolean plusMinus = false;
+		boolean pmWithBrackets = false;
+		int nonWordChars = 0;
+
+		// the two code points preceding c
+		int prev1 = -1;
+		int prev2 = -1;
+
+		for (int i = 0; i < n;) {
+			int c = superUnit.codePointAt(i);
+			int cls = charClass(c);
+
+			if ((cls & C_LINE_TERMINATOR) != 0)
+				lineTerminator = true;
+			if ((cls & C_WORD) == 0)
+				nonWordChars++;
+
+			switch (c) {
+			case '(':
+				leftParen = true;
+				break;
+			case '[':
+				leftSquare = true;
+				break;
+			case ')':
+				rightBracket = true;
+				if (leftParen)
+					closedBrackets = true;
+				if (prev2 == '(' && (prev1 == '+' || prev1 == '-'))
+					pmWithBrackets = true;
+				break;
+			case ']':
+				rightBracket = true;
+				if (leftSquare)
+					closedBrackets = true;
+				if (prev1 >= 0 && (charClass(prev1) & C_WORD) != 0)
+					alphanumericBracket = true;
+				break;
+			case '>':
+				if (prev1 == '-' && prev2 == '-')
+					arrow = true;
+				break;
+			case '+':
+			case '-':
+				if (prev1 == '/' && (prev2 == '+' || prev2 == '-'))
+					plusMinus = true;
+				break;
+			}
+
+			if (c == '-') {
+				dashes++;
+				if (dashes > maxDashes)
+					maxDashes = dashes;
+			} else {
+				dashes = 0;
+			}
+
+			prev2 = prev1;
+			prev1 = c;
+			i += Character.charCount(c);
+		}
+
+		char first = superUnit.charAt(0);
+		char last = superUnit.charAt(n - 1);
+
+		int flags = 0;
+
+		if (alphanumericBracket && !lineTerminator)
+			flags |= SU_IS_ALPHANUMERIC;
+
+		if (!lineTerminator) {
+			if (n > 1
+					&& ((first == '(' && last == ')') || (first == '[' && last == ']')))
+				flags |= SU_IN_BRACKETS;
+			else if (closedBrackets)
+				flags |= SU_HAS_CLOSED_BRACKETS;
+			else if (leftParen || leftSquare)
+				flags |= SU_HAS_LEFT_BRACKET_ONLY;
+			else if (rightBracket)
+				flags |= SU_HAS_RIGHT_BRACKET_ONLY;
+		}
+
+		if (arrow && !lineTerminator)
+			flags |= SU_HAS_ARROW;
+
+		if (n == 4 && maxDashes == 4)
+			flags |= SU_IS_DOUBLE_DASH;
+		else if (maxDashes >= 4 && !lineTerminator)
+			flags |= SU_HAS_DOUBLE_DASH;
+		else if (n == 2 && maxDashes == 2)
+			flags |= SU_IS_DASH;
+		else if (maxDashes >= 2 && !lineTerminator)
+			flags |= SU_HAS_DASH;
+
+		if (plusMinus && !lineTerminator)
+			flags |= SU_HAS_PLUS_MINUS;
+
+		if (pmWithBrackets && !lineTerminator)
+			flags |= SU_PM_WITH_BRACKETS;
+
+		if (isEnumeration(superUnit))
+			flags |= SU_IS_ENUMERATION;
+
+		if (superUnit.endsWith("(s)") && !lineTerminator)
+			flags |= SU_HAS_BRACKETED_PLURAL;
+
+		if (superUnit.endsWith("'s") && !lineTerminator)
+			flags |= SU_HAS_GENITIVE;
+
+		if (n > 6 && nonWordChars >= 5 && !arrow)
+			flags |= SU_IS_CHEMICAL;
+
+		if (!lineTerminator) {
+			if (hasPrefix(superUnit, "www."))
+				flags |= SU_WWW_URL;
+			else if (hasPrefix(superUnit, "http:")
+					|| hasPrefix(superUnit, "ftp:"))
+				flags |= SU_HTTP_URL;
+		}
+
+		return flags;
+	}
+
+	/**
+	 * \(([0-9]|[a-h]|i|ii|iii|iv|v)\)
+	 */
+	private static boolean isEnumeration(String s) {
+		int n = s.length();
+		if (n < 3 || n > 5 || s.charAt(0) != '(' || s.charAt(n - 1) != ')')
+			return false;
+		if (n == 3) {
+			char c = s.charAt(1);
+			return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'h')
+					|| c == 'i' || c == 'v';
+		}
+		String inner = s.substring(1, n - 1);
+		return inner.equals("ii") || inner.equals("iii") || inner.equals("iv");
+	}
+
+	/**
+	 * the prefix, optionally preceded by an opening bracket
+	 */
+	private static boolean hasPrefix(String s, String prefix) {
+		return s.startsWith(prefix)
+				|| (s.length() > prefix.length() && s.charAt(0) == '(' && s
+						.startsWith(prefix, 1));
+	}
+
+	/**
+	 * computes the brief word class of a unit in one pass, same as
+	 * replacing [A-Z]+ by "A", [a-z]+ by "a", [0-9]+ by "0" and
+	 * [^A-Za-z0-9]+ by "x"
+	 *
+	 * @return a shared string for all but very long word classes
+	 */
+	static String unitBriefWordClass(String unit) {
+		return briefWordClass(unit, false);
+	}
+
+	/**
+	 * computes the brief word class of a super-unit in one pass, same as
+	 * unitBriefWordClass() but with Sentence2TokenPipe.CAPS and LOW instead
+	 * of [A-Z] and [a-z]
+	 *
+	 * @return a shared string for all but very long word classes
+	 */
+	static String superUnitBriefWordClass(String superUnit) {
+		return briefWordClass(superUnit, true);
+	}
+
+	/**
+	 * @param extended
+	 *            use CAPS and LOW for upper and lower case
+	 */
+	private static String briefWordClass(String s, boolean extended) {
+		int runs = 0;
+		int code = 0;
+		int last = -1;
+		for (int i = 0; i < s.length(); i++) {
+			int symbol = shapeSymbol(s.charAt(i), extended);
+			if (symbol != last) {
+				if (++runs > MAX_SHAPE_RUNS)
+					return buildShape(s, extended);
+				code = (code << 2) | symbol;
+				last = symbol;
+			}
+		}
+
+		int index = shapeOffset(runs) + code;
+		String shape = SHAPES[index];
+		if (shape == null) {
+			// strings are immutable, so a race just builds it twice
+			char[] symbols = new char[runs];
+			for (int i = runs - 1; i >= 0; i--, code >>= 2)
+				symbols[i] = SHAPE_SYMBOLS[code & 3];
+			shape = new String(symbols);
+			SHAPES[index] = shape;
+		}
+		return shape;
+	}
+
+	/**
+	 * builds the brief word class of a string with many runs
+	 */
+	private static String buildShape(String s, boolean extended) {
+		StringBuilder shape = new StringBuilder();
+		int last = -1;
+		for (int i = 0; i < s.length(); i++) {
+			int symbol = shapeSymbol(s.charAt(i), extended);
+			if (symbol != last)
+				shape.append(SHAPE_SYMBOLS[symbol]);
+			last = symbol;
+		}
+		return shape.toString();
+	}
+
+	/**
+	 * @return the index of a character's symbol in SHAPE_SYMBOLS
+	 */
+	private static int shapeSymbol(char c, boolean extended) {
+		if (extended) {
+			int cls = charClass(c);
+			if ((cls & C_CAPS) != 0)
+				return 0;
+			if ((cls & C_LOW) != 0)
+				return 1;
+		} else {
+			if (c >= 'A' && c <= 'Z')
+				return 0;
+			if (c >= 'a' && c <= 'z')
+				return 1;
+		}
+		if (c >= '0' && c <= '9')
+			return 2;
+		return 3;
+	}
+
+	/**
+	 * @return the index of the first brief word class with the given number
+	 *         of runs in SHAPES, i.e. 4^0 + ... + 4^(runs - 1)
+	 */
+	private static int shapeOffset(int runs) {
+		return ((1 << (2 * runs)) - 1) / 3;
+	}
+}
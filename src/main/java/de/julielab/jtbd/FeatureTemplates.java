@@ -0,0 +1,137 @@
+/**
+ * FeatureTemplates.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * The feature templates of Sentence2TokenPipe, i.e. the groups of features
+ * which can be switched off together. Features which exclude each other
+ * (the sizes and the bracket, dash and URL checks) form one template.
+ * An instance tells which templates are used.
+ **/
+
+package de.julielab.jtbd;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+final class FeatureTemplates {
+
+	static final String U_LEX = "U_lex";
+	static final String U_HAS_RIGHT_WHITE_SPACE = "U_HasRightWhiteSpace";
+	static final String U_IS_TOKEN_BOUNDARY_SYMBOL = "U_isTokenBoundarySymbol";
+	static final String U_BWC = "U_BWC";
+	static final String U_SIZE = "U_SIZE";
+	static final String SU_LEX = "SU_lex";
+	static final String SU_SIZE = "SU_SIZE";
+	static final String SU_BWC = "SU_BWC";
+
+	// the templates in the order their features are made
+	private static final String[] NAMES = { U_LEX, U_HAS_RIGHT_WHITE_SPACE,
+			U_IS_TOKEN_BOUNDARY_SYMBOL, U_BWC, U_SIZE, "U_ABBR1", "U_ABBR2",
+			"U_ABBR3", "U_INITCAPS", "U_ONECAPS", "U_ALLCAPS",
+			"U_ALPHANUMERIC", "U_ROMAN", "U_HASROMAN", "U_NATURALNUMBER",
+			"U_REALNUMBER", "U_HASDIGITS", "U_BEGINBRACKETS", SU_LEX,
+			"SU_isAlphanumeric", "SU_brackets", "SU_isPartOfArrow",
+			"SU_dash", "SU_hasPlusMinus", "SU_PMwithBrackets",
+			"SU_isEnumeration", "SU_hasBracketedPlural", "SU_hasGenitive",
+			SU_SIZE, "SU_isChemical", SU_BWC, "SU_URL" };
+
+	// the FeatureScanner flags of each template
+	private static final int[] UNIT_FLAGS = { 0, 0, 0, 0, 0,
+			FeatureScanner.U_ABBR1, FeatureScanner.U_ABBR2,
+			FeatureScanner.U_ABBR3, FeatureScanner.U_INITCAPS,
+			FeatureScanner.U_ONECAPS, FeatureScanner.U_ALLCAPS,
+			FeatureScanner.U_ALPHANUMERIC, FeatureScanner.U_ROMAN,
+			FeatureScanner.U_HASROMAN, FeatureScanner.U_NATURALNUMBER,
+			FeatureScanner.U_REALNUMBER, FeatureScanner.U_HASDIGITS,
+			FeatureScanner.U_BEGINBRACKETS, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+			0, 0, 0 };
+
+	private static final int[] SUPER_UNIT_FLAGS = { 0, 0, 0, 0, 0, 0, 0, 0,
+			0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+			FeatureScanner.SU_IS_ALPHANUMERIC,
+			FeatureScanner.SU_IN_BRACKETS
+					| FeatureScanner.SU_HAS_CLOSED_BRACKETS
+					| FeatureScanner.SU_HAS_LEFT_BRACKET_ONLY
+					| FeatureScanner.SU_HAS_RIGHT_BRACKET_ONLY,
+			FeatureScanner.SU_HAS_ARROW,
+			FeatureScanner.SU_IS_DOUBLE_DASH
+					| FeatureScanner.SU_HAS_DOUBLE_DASH
+					| FeatureScanner.SU_IS_DASH | FeatureScanner.SU_HAS_DASH,
+			FeatureScanner.SU_HAS_PLUS_MINUS,
+			FeatureScanner.SU_PM_WITH_BRACKETS,
+			FeatureScanner.SU_IS_ENUMERATION,
+			FeatureScanner.SU_HAS_BRACKETED_PLURAL,
+			FeatureScanner.SU_HAS_GENITIVE, 0, FeatureScanner.SU_IS_CHEMICAL,
+			0, FeatureScanner.SU_WWW_URL | FeatureScanner.SU_HTTP_URL };
+
+	/**
+	 * all templates used
+	 */
+	static final FeatureTemplates ALL = new FeatureTemplates(Collections
+			.<String> emptySet());
+
+	// the templates without scanner flags
+	final boolean unitLex;
+	final boolean hasRightWhiteSpace;
+	final boolean isTokenBoundarySymbol;
+	final boolean unitBwc;
+	final boolean unitSize;
+	final boolean superUnitLex;
+	final boolean superUnitSize;
+	final boolean superUnitBwc;
+
+	// the scanner flags of the used templates
+	final int unitFlags;
+	final int superUnitFlags;
+
+	/**
+	 * @param disabled
+	 *            names of the templates which are not used
+	 * @throws IllegalArgumentException
+	 *             if there is an unknown template name
+	 */
+	FeatureTemplates(Set<String> disabled) {
+		List<String> names = getNames();
+		for (String name : disabled)
+			if (!names.contains(name))
+				throw new IllegalArgumentException("unknown feature template: "
+						+ name + ", known templates are " + names);
+
+		unitLex = !disabled.contains(U_LEX);
+		hasRightWhiteSpace = !disabled.contains(U_HAS_RIGHT_WHITE_SPACE);
+		isTokenBoundarySymbol = !disabled.contains(U_IS_TOKEN_BOUNDARY_SYMBOL);
+		unitBwc = !disabled.contains(U_BWC);
+		unitSize = !disabled.contains(U_SIZE);
+		superUnitLex = !disabled.contains(SU_LEX);
+		superUnitSize = !disabled.contains(SU_SIZE);
+		superUnitBwc = !disabled.contains(SU_BWC);
+
+		int unit = 0;
+		int superUnit = 0;
+		for (int i = 0; i < NAMES.length; i++) {
+			if (!disabled.contains(NAMES[i])) {
+				unit |= UNIT_FLAGS[i];
+				superUnit |= SUPER_UNIT_FLAGS[i];
+			}
+		}
+		unitFlags = unit;
+		superUnitFlags = superUnit;
+	}
+
+	/**
+	 * @return the names of all templates
+	 */
+	static List<String> getNames() {
+		return Collections.unmodifiableList(Arrays.asList(NAMES));
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * HashedAlphabet.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * Data alphabet for feature hashing: the index of a feature is a hash of its
+ * name reduced to a fixed number of bits, so no feature names are stored and
+ * the size of a model does not grow with the vocabulary of the training
+ * data. Different features may share an index. The features of the
+ * neighbors (see NeighborConjunctions) get their indices from the hash of
+ * the plain feature, so their names need not be built.
+ **/
+
+package de.julielab.jtbd;
+
+import cc.mallet.types.Alphabet;
+
+class HashedAlphabet extends Alphabet {
+
+	private static final long serialVersionUID = 1L;
+
+	static final int MIN_BITS = 1;
+
+	static final int MAX_BITS = 30;
+
+	// mixed into the hash of a feature for its left and right neighbor
+	// variant
+	private static final int LEFT_SEED = 0x9e3779b9;
+
+	private static final int RIGHT_SEED = 0x7f4a7c15;
+
+	private final int bits;
+
+	private final int mask;
+
+	/**
+	 * @param bits
+	 *            number of bits of the feature indices, i.e. there are
+	 *            2^bits indices
+	 * @throws IllegalArgumentException
+	 *             if bits is not within MIN_BITS and MAX_BITS
+	 */
+	HashedAlphabet(int bits) {
+		if (bits < MIN_BITS || bits > MAX_BITS)
+			throw new IllegalArgumentException("number of hash bits must be in ["
+					+ MIN_BITS + ", " + MAX_BITS + "], got " + bits);
+		this.bits = bits;
+		mask = (1 << bits) - 1;
+	}
+
+	int getBits() {
+		return bits;
+	}
+
+	/**
+	 * @return the full hash of a feature name, the same in each JVM
+	 */
+	static int hash(String feature) {
+		return mix(feature.hashCode());
+	}
+
+	// the finalizer of MurmurHash3, spreads the bits of String.hashCode()
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * @param hash
+	 *            see hash()
+	 * @return the index of the feature
+	 */
+	int index(int hash) {
+		return hash & mask;
+	}
+
+	/**
+	 * @param hash
+	 *            see hash()
+	 * @param left
+	 *            true for the feature of the left neighbor ("@-1"), false
+	 *            for the right one ("@1")
+	 * @return the index of the neighbor feature
+	 */
+	int neighborIndex(int hash, boolean left) {
+		return mix(hash ^ (left ? LEFT_SEED : RIGHT_SEED)) & mask;
+	}
+
+	/**
+	 * @return the index of the feature, the alphabet never grows
+	 */
+	@Override
+	public int lookupIndex(Object entry, boolean addIfNotPresent) {
+		return index(hash(entry.toString()));
+	}
+
+	/**
+	 * @return the number of indices, 2^bits
+	 */
+	@Override
+	public int size() {
+		return mask + 1;
+	}
+
+	/**
+	 * @return a placeholder, the feature names are not known
+	 */
+	@Override
+	public Object lookupObject(int index) {
+		return "#" + index;
+	}
+
+	@Override
+	public boolean contains(Object entry) {
+		return true;
+	}
+}
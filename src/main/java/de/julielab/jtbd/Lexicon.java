@@ -0,0 +1,394 @@
+/**
+ * Lexicon.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * A list of known tokens, e.g. gene names like "IL-4" or "GM-CSF", which
+ * are found in a sentence before it is decoded (see Tokenizer.setLexicon()).
+ * The tokens are found in one pass over the sentence by an Aho-Corasick
+ * automaton. Its nodes are numbered breadth first, so the children of a
+ * node are adjacent and its transitions are found by a binary search in
+ * flat arrays. The units of the sentences and the units pinned by the
+ * lexicon are counted.
+ **/
+
+package de.julielab.jtbd;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Lexicon {
+
+	// the classes of the characters which continue a word, a token next to
+	// one of them is not taken
+	private static final int WORD_CLASSES = CharClasses.BOUNDARY_WORD
+			| CharClasses.NON_SPACING_MARK | CharClasses.DASH;
+
+	private final int size;
+
+	// the character of the transition into each node
+	private char[] chars;
+
+	// the children of node k are the nodes firstChild[k] to
+	// firstChild[k + 1] - 1
+	private int[] firstChild;
+
+	// the node of the longest proper suffix of the text of each node
+	private int[] fail;
+
+	// the length of the token ending at each node, 0 if none
+	private int[] lengths;
+
+	// the nearest node with a token on the fail path of each node
+	// (including itself), 0 if none
+	private int[] outputs;
+
+	private final AtomicLong unitCount = new AtomicLong();
+
+	private final AtomicLong pinnedUnitCount = new AtomicLong();
+
+	/**
+	 * @param tokens
+	 *            the known tokens, tokens with white space are left out as
+	 *            white space always ends a token
+	 */
+	public Lexicon(Collection<String> tokens) {
+		TreeSet<String> sorted = new TreeSet<String>();
+		for (String token : tokens) {
+			boolean hasWhiteSpace = false;
+			for (int i = 0; i < token.length(); i++)
+				hasWhiteSpace |= Sentence2TokenPipe.isWhiteSpace(token.charAt(i));
+			if (token.length() > 0 && !hasWhiteSpace)
+				sorted.add(token);
+		}
+		size = sorted.size();
+		build(sorted.toArray(new String[size]));
+	}
+
+	/**
+	 * reads a lexicon file with one token per line (UTF-8); blanks around a
+	 * token and empty lines are ignored
+	 */
+	public static Lexicon read(String filename) throws IOException {
+		ArrayList<String> tokens = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(filename), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null)
+				tokens.add(line.trim());
+		} finally {
+			reader.close();
+		}
+		return new Lexicon(tokens);
+	}
+
+	/**
+	 * makes the automaton: the trie of the sorted tokens level by level,
+	 * where the tokens with the same prefix are a range of the array, and
+	 * the fail paths of the children of each node as it is reached
+	 */
+	private void build(String[] tokens) {
+		int capacity = 16;
+		chars = new char[capacity];
+		firstChild = new int[capacity + 1];
+		fail = new int[capacity];
+		lengths = new int[capacity];
+		outputs = new int[capacity];
+		// the range of tokens with the prefix of each node
+		int[] from = new int[capacity];
+		int[] to = new int[capacity];
+		int[] depths = new int[capacity];
+		to[0] = tokens.length;
+		int nrNodes = 1;
+
+		for (int k = 0; k < nrNodes; k++) {
+			firstChild[k] = nrNodes;
+			int depth = depths[k];
+			int i = from[k];
+			if (i < to[k] && tokens[i].length() == depth) {
+				// the sorted tokens start with the one ending here
+				lengths[k] = depth;
+				i++;
+			}
+			while (i < to[k]) {
+				char c = tokens[i].charAt(depth);
+				int j = i + 1;
+				while (j < to[k] && tokens[j].charAt(depth) == c)
+					j++;
+				if (nrNodes == capacity) {
+					capacity *= 2;
+					chars = Arrays.copyOf(chars, capacity);
+					firstChild = Arrays.copyOf(firstChild, capacity + 1);
+					fail = Arrays.copyOf(fail, capacity);
+					lengths = Arrays.copyOf(lengths, capacity);
+					outputs = Arrays.copyOf(outputs, capacity);
+					from = Arrays.copyOf(from, capacity);
+					to = Arrays.copyOf(to, capacity);
+					depths = Arrays.copyOf(depths, capacity);
+				}
+				chars[nrNodes] = c;
+				from[nrNodes] = i;
+				to[nrNodes] = j;
+				depths[nrNodes] = depth + 1;
+				nrNodes++;
+				i = j;
+			}
+			if (lengths[k] > 0)
+				outputs[k] = k;
+			else if (k > 0)
+				outputs[k] = outputs[fail[k]];
+
+			// the fail paths of the children only lead to nodes which are
+			// less deep, their children are known
+			for (int child = firstChild[k]; child < nrNodes; child++) {
+				int node = fail[k];
+				int next = k == 0 ? 0 : child(node, chars[child]);
+				while (node > 0 && next < 0) {
+					node = fail[node];
+					next = child(node, chars[child]);
+				}
+				fail[child] = next < 0 ? 0 : next;
+			}
+		}
+		firstChild[nrNodes] = nrNodes;
+		chars = Arrays.copyOf(chars, nrNodes);
+		firstChild = Arrays.copyOf(firstChild, nrNodes + 1);
+		fail = Arrays.copyOf(fail, nrNodes);
+		lengths = Arrays.copyOf(lengths, nrNodes);
+		outputs = Arrays.copyOf(outputs, nrNodes);
+	}
+
+	/**
+	 * @return the child of a node by the character of its transition, -1 if
+	 *         there is none
+	 */
+	private int child(int node, char c) {
+		int low = firstChild[node];
+		int high = firstChild[node + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (chars[mid] < c)
+				low = mid + 1;
+			else if (chars[mid] > c)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the node reached from a node by a character
+	 */
+	private int next(int node, char c) {
+		while (true) {
+			int child = child(node, c);
+			if (child >= 0)
+				return child;
+			if (node == 0)
+				return 0;
+			node = fail[node];
+		}
+	}
+
+	/**
+	 * finds the tokens of the lexicon in a text
+	 *
+	 * @return the begin and end offsets of all occurrences, also of
+	 *         overlapping ones, by their end
+	 */
+	int[] find(CharSequence text) {
+		int[] matches = new int[16];
+		int n = 0;
+		int node = 0;
+		for (int p = 0; p < text.length(); p++) {
+			node = next(node, text.charAt(p));
+			for (int o = outputs[node]; o > 0; o = outputs[fail[o]]) {
+				if (n + 2 > matches.length)
+					matches = Arrays.copyOf(matches, 2 * matches.length);
+				matches[n++] = p + 1 - lengths[o];
+				matches[n++] = p + 1;
+			}
+		}
+		return Arrays.copyOf(matches, n);
+	}
+
+	/**
+	 * Pins the labels of the units of the tokens found in a sentence: the
+	 * last unit of a token is labeled P, the others N, and the unit before
+	 * it becomes a boundary. A token at the end of the sentence is labeled
+	 * N throughout as the last unit is in the training data, it ends there
+	 * anyway. A token is only taken if it begins and ends
+	 * with a unit and is not part of a longer word, i.e. it is not preceded
+	 * or followed by a letter, a digit, '_', a combining mark or a dash, as
+	 * "IL-4" in "anti-IL-4" or "IL-4-induced". White space, the edges of
+	 * the text and other punctuation, as in "(IL-4)," may be next to it. Of
+	 * overlapping tokens, the first and then the longest one is taken.
+	 *
+	 * @param units
+	 *            the units of the sentence, get the labels of the pinned
+	 *            units
+	 * @param boundaries
+	 *            the units whose label is P, see Tokenizer.getBoundaries();
+	 *            get the boundaries before the pinned tokens
+	 */
+	void pin(UnitBuffer units, boolean[] boundaries) {
+		int n = units.size();
+		unitCount.addAndGet(n);
+		if (n == 0)
+			return;
+		CharSequence text = units.getText();
+		int begin = units.getBegin(0);
+		int end = units.getEnd(n - 1);
+
+		// the last unit of the longest token beginning with each unit
+		int[] lasts = null;
+		int node = 0;
+		for (int p = begin; p < end; p++) {
+			node = next(node, text.charAt(p));
+			for (int o = outputs[node]; o > 0; o = outputs[fail[o]]) {
+				int tokenBegin = p + 1 - lengths[o];
+				if (tokenBegin < begin
+						|| tokenBegin > 0
+						&& continuesWord(Character.codePointBefore(text,
+								tokenBegin))
+						|| p + 1 < text.length()
+						&& continuesWord(Character.codePointAt(text, p + 1)))
+					continue;
+				int first = unitBeginningAt(units, tokenBegin);
+				int last = unitEndingAt(units, p + 1);
+				if (first < 0 || last < 0)
+					continue;
+				if (lasts == null) {
+					lasts = new int[n];
+					Arrays.fill(lasts, -1);
+				}
+				lasts[first] = Math.max(lasts[first], last);
+			}
+		}
+		if (lasts == null)
+			return;
+
+		int pinned = 0;
+		for (int first = 0; first < n; first++) {
+			int last = lasts[first];
+			if (last < 0)
+				continue;
+			if (first > 0)
+				boundaries[first - 1] = true;
+			for (int i = first; i < last; i++)
+				units.setLabel(i, UnitBuffer.LABEL_N);
+			if (last < n - 1 || boundaries[last]) {
+				boundaries[last] = true;
+				units.setLabel(last, UnitBuffer.LABEL_P);
+			} else {
+				units.setLabel(last, UnitBuffer.LABEL_N);
+			}
+			pinned += last - first + 1;
+			first = last;
+		}
+		pinnedUnitCount.addAndGet(pinned);
+	}
+
+	/**
+	 * @return whether a code point continues a word, see WORD_CLASSES
+	 */
+	private static boolean continuesWord(int c) {
+		return (CharClasses.of(c) & WORD_CLASSES) != 0;
+	}
+
+	/**
+	 * @return the unit beginning at an offset, -1 if there is none
+	 */
+	private static int unitBeginningAt(UnitBuffer units, int offset) {
+		int low = 0;
+		int high = units.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (units.getBegin(mid) < offset)
+				low = mid + 1;
+			else if (units.getBegin(mid) > offset)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the unit ending at an offset, -1 if there is none
+	 */
+	private static int unitEndingAt(UnitBuffer units, int offset) {
+		int low = 0;
+		int high = units.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (units.getEnd(mid) < offset)
+				low = mid + 1;
+			else if (units.getEnd(mid) > offset)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of tokens
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of units of the sentences looked up
+	 */
+	public long getUnits() {
+		return unitCount.get();
+	}
+
+	/**
+	 * @return the number of units whose labels were pinned
+	 */
+	public long getPinnedUnits() {
+		return pinnedUnitCount.get();
+	}
+
+	/**
+	 * @return the fraction of the units whose labels were pinned, 0 if there
+	 *         were no units
+	 */
+	public double getPinnedRate() {
+		long u = unitCount.get();
+		return u == 0 ? 0 : (double) pinnedUnitCount.get() / u;
+	}
+
+	/**
+	 * sets the numbers of units and pinned units to zero
+	 */
+	public void resetStatistics() {
+		unitCount.set(0);
+		pinnedUnitCount.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + size + ", units=" + getUnits() + ", pinned units="
+				+ getPinnedUnits() + ", pinned rate=" + getPinnedRate();
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * NeighborConjunctions.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * Training pipe which turns the token sequence of Sentence2TokenPipe into a
+ * feature vector sequence where each unit also has the features of its left
+ * and right neighbor. It yields the same features as OffsetConjunctions({-1},
+ * {1}) followed by TokenSequence2FeatureVectorSequence, but works on feature
+ * indices: the names of the neighbor features ("@-1", "@1") are made only
+ * once per feature of the alphabet, not once per unit. With a HashedAlphabet,
+ * they are not made at all.
+ **/
+
+package de.julielab.jtbd;
+
+import java.util.Arrays;
+
+import cc.mallet.pipe.Pipe;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureVector;
+import cc.mallet.types.FeatureVectorSequence;
+import cc.mallet.types.Instance;
+import cc.mallet.types.PropertyList;
+import cc.mallet.types.TokenSequence;
+
+class NeighborConjunctions extends Pipe {
+
+	private static final long serialVersionUID = 1L;
+
+	// suffixes of the features of the left and right neighbor, as made by
+	// OffsetConjunctions
+	static final String LEFT_SUFFIX = "@-1";
+
+	static final String RIGHT_SUFFIX = "@1";
+
+	// not yet looked up
+	private static final int UNKNOWN = -2;
+
+	// feature index -> index of the feature as left and right neighbor
+	// feature (-1 if not in the alphabet), filled on demand. Both arrays are
+	// replaced together when they grow, so that the pipe can be used by
+	// several threads; an entry written by one thread and not yet seen by
+	// another is just looked up again.
+	private transient volatile int[][] neighborIndices;
+
+	/**
+	 * default constructor, the data alphabet is the one of the preceding pipe
+	 */
+	NeighborConjunctions() {
+		super();
+	}
+
+	/**
+	 * @param dataAlphabet
+	 *            the alphabet of the features, e.g. a HashedAlphabet
+	 */
+	NeighborConjunctions(Alphabet dataAlphabet) {
+		super(dataAlphabet, null);
+	}
+
+	/**
+	 * makes a feature vector sequence from the token sequence in the data
+	 * field of the instance
+	 */
+	public Instance pipe(Instance carrier) {
+		TokenSequence ts = (TokenSequence) carrier.getData();
+		Alphabet dict = getDataAlphabet();
+		if (ts.size() == 0) {
+			carrier.setData(new FeatureVectorSequence(dict, ts));
+			return carrier;
+		}
+
+		// the indices (or hashes) of the features of each unit
+		HashedAlphabet hashed = dict instanceof HashedAlphabet ? (HashedAlphabet) dict
+				: null;
+		int[][] own = new int[ts.size()][];
+		for (int i = 0; i < ts.size(); i++)
+			own[i] = lookupFeatures(dict, hashed, ts.get(i).getFeatures());
+
+		FeatureVector[] vectors = new FeatureVector[ts.size()];
+		synchronized (this) {
+			for (int i = 0; i < ts.size(); i++) {
+				int size = own[i].length + (i > 0 ? own[i - 1].length : 0)
+						+ (i + 1 < ts.size() ? own[i + 1].length : 0);
+				int[] buffer = new int[size];
+				int n = 0;
+				for (int index : own[i])
+					buffer[n++] = hashed == null ? index : hashed.index(index);
+				if (i > 0)
+					n = addNeighborIndices(dict, hashed, own[i - 1], true,
+							buffer, n);
+				if (i + 1 < ts.size())
+					n = addNeighborIndices(dict, hashed, own[i + 1], false,
+							buffer, n);
+				vectors[i] = new FeatureVector(dict, distinct(buffer, n));
+			}
+		}
+
+		carrier.setData(new FeatureVectorSequence(vectors));
+		return carrier;
+	}
+
+	/**
+	 * @return the indices of the features in the alphabet or, for a hashed
+	 *         alphabet, their hashes
+	 */
+	private int[] lookupFeatures(Alphabet dict, HashedAlphabet hashed,
+			PropertyList features) {
+		int[] indices = new int[16];
+		int n = 0;
+		if (features == null)
+			return new int[0];
+		PropertyList.Iterator iter = features.iterator();
+		while (iter.hasNext()) {
+			iter.next();
+			int index = hashed != null ? HashedAlphabet.hash(iter.getKey())
+					: dict.lookupIndex(iter.getKey(), !dict.growthStopped());
+			if (index < 0 && hashed == null)
+				continue;
+			if (n == indices.length)
+				indices = Arrays.copyOf(indices, 2 * n);
+			indices[n++] = index;
+		}
+		return Arrays.copyOf(indices, n);
+	}
+
+	private int addNeighborIndices(Alphabet dict, HashedAlphabet hashed,
+			int[] features, boolean left, int[] buffer, int n) {
+		for (int feature : features) {
+			int index = hashed != null ? hashed.neighborIndex(feature, left)
+					: neighborIndex(dict, feature, left);
+			if (index >= 0)
+				buffer[n++] = index;
+		}
+		return n;
+	}
+
+	/**
+	 * @return the index of a feature as left or right neighbor feature, -1
+	 *         if it is not in the alphabet and may not be added
+	 */
+	private int neighborIndex(Alphabet dict, int feature, boolean left) {
+		int[][] all = neighborIndices;
+		if (all == null || feature >= all[0].length) {
+			int length = Math.max(feature + 1, 2 * dict.size());
+			int oldLength = all == null ? 0 : all[0].length;
+			int[][] grown = new int[2][];
+			for (int k = 0; k < 2; k++) {
+				grown[k] = all == null ? new int[length] : Arrays.copyOf(
+						all[k], length);
+				Arrays.fill(grown[k], oldLength, length, UNKNOWN);
+			}
+			neighborIndices = grown;
+			all = grown;
+		}
+		int[] indices = all[left ? 0 : 1];
+		if (indices[feature] == UNKNOWN || indices[feature] == -1
+				&& !dict.growthStopped()) {
+			String name = dict.lookupObject(feature).toString()
+					+ (left ? LEFT_SUFFIX : RIGHT_SUFFIX);
+			indices[feature] = dict.lookupIndex(name, !dict.growthStopped());
+		}
+		return indices[feature];
+	}
+
+	/**
+	 * sorts the first n indices and removes duplicates
+	 */
+	static int[] distinct(int[] buffer, int n) {
+		Arrays.sort(buffer, 0, n);
+		int distinct = 0;
+		for (int j = 0; j < n; j++)
+			if (distinct == 0 || buffer[distinct - 1] != buffer[j])
+				buffer[distinct++] = buffer[j];
+		return Arrays.copyOf(buffer, distinct);
+	}
+}
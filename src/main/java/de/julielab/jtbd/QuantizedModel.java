@@ -0,0 +1,52 @@
+/**
+ * QuantizedModel.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * A model for prediction only: the input pipe of a trained CRF and a Decoder
+ * with quantized feature weights instead of the CRF itself. It is written by
+ * Tokenizer.writeQuantizedModel() and can be read by Tokenizer.readModel()
+ * like a CRF.
+ *
+ * Only models with hashed features (see HashedAlphabet) are written this
+ * way. A feature alphabet with names is often the larger part of a model,
+ * and the prediction pipe made from it (see Sentence2FeatureVectorPipe)
+ * holds a map of the names, too. The hashed alphabet stores no names and
+ * the prediction pipe finds the indices by hashing, so what is kept of the
+ * model is about the size of its weights.
+ **/
+
+package de.julielab.jtbd;
+
+import java.io.Serializable;
+
+import cc.mallet.pipe.Pipe;
+
+class QuantizedModel implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Pipe inputPipe;
+
+	private final Decoder decoder;
+
+	QuantizedModel(Pipe inputPipe, Decoder decoder) {
+		this.inputPipe = inputPipe;
+		this.decoder = decoder;
+	}
+
+	Pipe getInputPipe() {
+		return inputPipe;
+	}
+
+	Decoder getDecoder() {
+		return decoder;
+	}
+}
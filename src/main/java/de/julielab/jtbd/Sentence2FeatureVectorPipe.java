@@ -0,0 +1,305 @@
+/**
+ * Sentence2FeatureVectorPipe.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * Prediction pipe which produces the same feature vector sequence as the
+ * trained pipe chain (Sentence2TokenPipe followed by NeighborConjunctions or,
+ * in older models, by OffsetConjunctions and
+ * TokenSequence2FeatureVectorSequence) but looks up the feature indices
+ * directly in the frozen data alphabet. This way, no feature name strings
+ * and property lists have to be built for the conjunctions at prediction
+ * time. For a HashedAlphabet, the indices are computed from the hashes.
+ **/
+
+package de.julielab.jtbd;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import cc.mallet.pipe.Pipe;
+import cc.mallet.pipe.SerialPipes;
+import cc.mallet.pipe.TokenSequence2FeatureVectorSequence;
+import cc.mallet.pipe.tsf.OffsetConjunctions;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureVector;
+import cc.mallet.types.FeatureVectorSequence;
+import cc.mallet.types.Instance;
+import cc.mallet.types.LabelAlphabet;
+import cc.mallet.types.LabelSequence;
+import cc.mallet.types.TokenSequence;
+
+class Sentence2FeatureVectorPipe extends Pipe {
+
+	private static final long serialVersionUID = 1L;
+
+	// the prefixes of the features with a lexical value
+	private static final String[] LEXICAL_PREFIXES = { "U_lex=", "U_BWC=",
+			"SU_lex=", "SU_BWC=" };
+
+	private final Sentence2TokenPipe featurePipe;
+
+	// feature name -> indices of the feature itself, as left neighbor
+	// feature and as right neighbor feature (-1 if not in the alphabet)
+	private final HashMap<String, int[]> features = new HashMap<String, int[]>();
+
+	// lexical prefix -> value -> indices as above
+	private final HashMap<String, HashMap<String, int[]>> lexicalFeatures = new HashMap<String, HashMap<String, int[]>>();
+
+	// the alphabet if it is hashed, the maps above are not used then
+	private final HashedAlphabet hashedAlphabet;
+
+	/**
+	 * @param featurePipe
+	 *            the pipe which was used for training
+	 * @param dataAlphabet
+	 *            the data alphabet of the trained model, must not grow any
+	 *            more
+	 */
+	Sentence2FeatureVectorPipe(Sentence2TokenPipe featurePipe,
+			Alphabet dataAlphabet) {
+		super(dataAlphabet, featurePipe.getTargetAlphabet());
+		this.featurePipe = featurePipe;
+		if (dataAlphabet instanceof HashedAlphabet) {
+			hashedAlphabet = (HashedAlphabet) dataAlphabet;
+			return;
+		}
+		hashedAlphabet = null;
+		for (String prefix : LEXICAL_PREFIXES)
+			lexicalFeatures.put(prefix, new HashMap<String, int[]>());
+
+		for (int i = 0; i < dataAlphabet.size(); i++) {
+			String name = dataAlphabet.lookupObject(i).toString();
+			// names with a suffix can also be plain features with a lexical
+			// value that happens to end like that, so they are registered
+			// in both ways
+			register(name, 0, i);
+			if (name.endsWith(NeighborConjunctions.LEFT_SUFFIX))
+				register(name.substring(0, name.length()
+						- NeighborConjunctions.LEFT_SUFFIX.length()), 1, i);
+			else if (name.endsWith(NeighborConjunctions.RIGHT_SUFFIX))
+				register(name.substring(0, name.length()
+						- NeighborConjunctions.RIGHT_SUFFIX.length()), 2, i);
+		}
+	}
+
+	/**
+	 * makes a prediction pipe for a trained input pipe
+	 *
+	 * @param inputPipe
+	 *            the input pipe of a trained model
+	 * @return the prediction pipe or null if the input pipe is not one
+	 *         built in Tokenizer.makeTrainingData()
+	 */
+	static Sentence2FeatureVectorPipe forInputPipe(Pipe inputPipe) {
+		if (!(inputPipe instanceof SerialPipes))
+			return null;
+		SerialPipes pipes = (SerialPipes) inputPipe;
+		boolean conjunctions = pipes.size() == 2
+				&& pipes.getPipe(1) instanceof NeighborConjunctions;
+		// pipe of models trained before NeighborConjunctions
+		boolean offsetConjunctions = pipes.size() == 3
+				&& pipes.getPipe(1) instanceof OffsetConjunctions
+				&& pipes.getPipe(2) instanceof TokenSequence2FeatureVectorSequence;
+		if (!(pipes.getPipe(0) instanceof Sentence2TokenPipe)
+				|| !conjunctions && !offsetConjunctions
+				|| offsetConjunctions
+				&& inputPipe.getDataAlphabet() instanceof HashedAlphabet)
+			return null;
+		return new Sentence2FeatureVectorPipe(
+				(Sentence2TokenPipe) pipes.getPipe(0),
+				inputPipe.getDataAlphabet());
+	}
+
+	private void register(String name, int variant, int index) {
+		HashMap<String, int[]> map = features;
+		String key = name;
+		for (String prefix : LEXICAL_PREFIXES) {
+			if (name.startsWith(prefix)) {
+				map = lexicalFeatures.get(prefix);
+				key = name.substring(prefix.length());
+				break;
+			}
+		}
+		int[] indices = map.get(key);
+		if (indices == null) {
+			indices = new int[] { -1, -1, -1 };
+			map.put(key, indices);
+		}
+		indices[variant] = index;
+	}
+
+	// the indices of a feature in a hashed alphabet, as NeighborConjunctions
+	// computes them
+	private int[] hashedIndices(String feature) {
+		int hash = HashedAlphabet.hash(feature);
+		return new int[] { hashedAlphabet.index(hash),
+				hashedAlphabet.neighborIndex(hash, true),
+				hashedAlphabet.neighborIndex(hash, false) };
+	}
+
+	/**
+	 * Collects the indices of the features of a unit known to the alphabet.
+	 */
+	private class IndexFeatures implements Sentence2TokenPipe.FeatureSink {
+
+		ArrayList<int[]> indices;
+
+		public void add(String feature) {
+			if (hashedAlphabet != null) {
+				indices.add(hashedIndices(feature));
+				return;
+			}
+			int[] i = features.get(feature);
+			if (i != null)
+				indices.add(i);
+		}
+
+		public void add(String prefix, String value) {
+			if (hashedAlphabet != null) {
+				indices.add(hashedIndices(prefix + value));
+				return;
+			}
+			int[] i = lexicalFeatures.get(prefix).get(value);
+			if (i != null)
+				indices.add(i);
+		}
+	}
+
+	/**
+	 * @return the pipe which makes the units and their features
+	 */
+	Sentence2TokenPipe getFeaturePipe() {
+		return featurePipe;
+	}
+
+	/**
+	 * finds the features of a unit in the alphabet
+	 * 
+	 * @param superUnit
+	 *            see Sentence2TokenPipe.addFeatures()
+	 * @return the indices of the features known to the alphabet, in the
+	 *         form used by featureVector()
+	 */
+	ArrayList<int[]> unitFeatures(Unit unit, String wSpace,
+			Sentence2TokenPipe.SuperUnitFeatures superUnit) {
+		IndexFeatures sink = new IndexFeatures();
+		sink.indices = new ArrayList<int[]>();
+		featurePipe.addFeatures(unit, wSpace, superUnit, sink);
+		return sink.indices;
+	}
+
+	/**
+	 * finds the features of the i-th unit of a buffer in the alphabet
+	 * 
+	 * @param superUnit
+	 *            see Sentence2TokenPipe.addFeatures()
+	 * @return the indices as above
+	 */
+	ArrayList<int[]> unitFeatures(UnitBuffer units, int i,
+			Sentence2TokenPipe.SuperUnitFeatures superUnit) {
+		IndexFeatures sink = new IndexFeatures();
+		sink.indices = new ArrayList<int[]>();
+		featurePipe.addFeatures(units, i, superUnit, sink);
+		return sink.indices;
+	}
+
+	/**
+	 * makes the feature vector of a unit from its features and those of its
+	 * neighbors, as OffsetConjunctions and
+	 * TokenSequence2FeatureVectorSequence do
+	 * 
+	 * @param left
+	 *            features of the left neighbor, null at the beginning of the
+	 *            sentence
+	 * @param own
+	 *            features of the unit
+	 * @param right
+	 *            features of the right neighbor, null at the end of the
+	 *            sentence
+	 */
+	FeatureVector featureVector(ArrayList<int[]> left, ArrayList<int[]> own,
+			ArrayList<int[]> right) {
+		int size = own.size() + (left == null ? 0 : left.size())
+				+ (right == null ? 0 : right.size());
+		int[] buffer = new int[size];
+		int n = 0;
+		// own features, features of left neighbor as @-1, features of right
+		// neighbor as @1
+		n = addIndices(own, 0, buffer, n);
+		if (left != null)
+			n = addIndices(left, 1, buffer, n);
+		if (right != null)
+			n = addIndices(right, 2, buffer, n);
+
+		return new FeatureVector(getDataAlphabet(), NeighborConjunctions
+				.distinct(buffer, n));
+	}
+
+	private int addIndices(ArrayList<int[]> features, int variant,
+			int[] buffer, int n) {
+		for (int[] indices : features)
+			if (indices[variant] >= 0)
+				buffer[n++] = indices[variant];
+		return n;
+	}
+
+	/**
+	 * makes a feature vector sequence for the sentence in the data field of
+	 * the instance, the other fields are set as by the trained pipe
+	 */
+	public Instance pipe(Instance carrier) {
+
+		LabelSequence target = new LabelSequence(
+				(LabelAlphabet) getTargetAlphabet());
+
+		ArrayList<Unit> units = new ArrayList<Unit>();
+		ArrayList<String> wSpaces = new ArrayList<String>();
+		ArrayList<String> labels = new ArrayList<String>();
+
+		boolean success = featurePipe.makeUnits(carrier, units, labels,
+				wSpaces);
+		if (!success || units.size() == 0) {
+			// as for the trained pipe, the source stays a string if the
+			// sentence is omitted
+			carrier.setData(new FeatureVectorSequence(getDataAlphabet(),
+					new TokenSequence()));
+			carrier.setTarget(target);
+			carrier.setName(units);
+			if (success)
+				carrier.setSource(wSpaces);
+			return carrier;
+		}
+
+		// the known features of each unit
+		ArrayList<ArrayList<int[]>> unitFeatures = new ArrayList<ArrayList<int[]>>(
+				units.size());
+		Sentence2TokenPipe.SuperUnitFeatures superUnit = new Sentence2TokenPipe.SuperUnitFeatures();
+		for (int i = 0; i < units.size(); i++) {
+			unitFeatures.add(unitFeatures(units.get(i), wSpaces.get(i),
+					superUnit));
+			target.add(labels.get(i));
+		}
+
+		// add the conjunctions with the neighbors
+		FeatureVector[] vectors = new FeatureVector[units.size()];
+		for (int i = 0; i < units.size(); i++)
+			vectors[i] = featureVector(i > 0 ? unitFeatures.get(i - 1) : null,
+					unitFeatures.get(i),
+					i + 1 < units.size() ? unitFeatures.get(i + 1) : null);
+
+		carrier.setData(new FeatureVectorSequence(vectors));
+		carrier.setTarget(target);
+		carrier.setName(units);
+		carrier.setSource(wSpaces);
+
+		return carrier;
+	}
+}
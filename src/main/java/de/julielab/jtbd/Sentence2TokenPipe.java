@@ -13,16 +13,14 @@
  * Creation date: Aug 01, 2006 
  * 
  * Pipe for tokenization.
- * 
- * TODO: combine makeUnits and makeLabels into one method
  **/
 
 package de.julielab.jtbd;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,14 +48,22 @@ class Sentence2TokenPipe extends Pipe {
 
 	Set<String> tbSymbols;
 
-	Pattern splitPattern = Pattern.compile("[^\\s]+");
+	// lookup table for tbSymbols
+	private transient TokenBoundarySymbols tbLookup;
+
+	// names of the feature templates which are not used, null if all are
+	// used (also for models trained before templates could be disabled)
+	Set<String> disabledTemplates;
+
+	private transient FeatureTemplates templates;
 
 	/**
 	 * default constructor
 	 */
 	public Sentence2TokenPipe() {
 		super(new Alphabet(), new LabelAlphabet());
-		tbSymbols = (new TokenBoundarySymbols()).getSymbols();
+		tbSymbols = new HashSet<String>(TokenBoundarySymbols.getInstance()
+				.getSymbols());
 	}
 
 	/**
@@ -72,12 +78,6 @@ class Sentence2TokenPipe extends Pipe {
 	 */
 	public Instance pipe(Instance carrier) {
 
-		// the input sentence (not tokenized)
-		String orgSentence = (String) carrier.getData();
-
-		// the tokenized sentence (for training, empty for prediction)
-		String tokSentence = (String) carrier.getSource();
-
 		// the features for each token
 		TokenSequence data = new TokenSequence();
 
@@ -87,256 +87,324 @@ class Sentence2TokenPipe extends Pipe {
 
 		ArrayList<Unit> units = new ArrayList<Unit>();
 		ArrayList<String> wSpaces = new ArrayList<String>();
-		ArrayList<String> labels;
+		ArrayList<String> labels = new ArrayList<String>();
 
-		// make the units from the input sentence
-		makeUnits(orgSentence, units, wSpaces);
+		if (!makeUnits(carrier, units, labels, wSpaces)) {
+			// just omit this sentence for tokenization, but throw the error
+			// from above
+			carrier.setData(data);
+			carrier.setTarget(target);
+			carrier.setName(units);
+			return carrier;
+		}
 
-		if (tokSentence.length() > 0) {
-			// in evaluation mode get the labels from tokSentence
-			labels = makeLabels(tokSentence);
-		} else {
+		// make the features for each unit
+		TokenFeatures features = new TokenFeatures();
+		SuperUnitFeatures superUnit = new SuperUnitFeatures();
+		for (int i = 0; i < units.size(); i++) {
+			Token token = new Token(units.get(i).rep);
+			features.token = token;
+			addFeatures(units.get(i), wSpaces.get(i), superUnit, features);
+
+			/*
+			 * now add the features and the label
+			 */
+			data.add(token);
+			target.add(labels.get(i));
+		}
+
+		carrier.setData(data); // the features per token
+		carrier.setTarget(target); // the labels per token
+		carrier.setName(units);
+
+		carrier.setSource(wSpaces);
+
+		return carrier;
+	}
+
+	/**
+	 * makes the units, labels and white space infos for the sentence of an
+	 * instance as it is passed to pipe()
+	 * 
+	 * @param carrier
+	 *            the instance with the input sentence as data and the
+	 *            tokenized sentence (or an empty string) as source
+	 * @return false if the input and tokenized sentence do not fit
+	 */
+	boolean makeUnits(Instance carrier, ArrayList<Unit> units,
+			ArrayList<String> labels, ArrayList<String> wSpaces) {
+
+		// the input sentence (not tokenized)
+		String orgSentence = (String) carrier.getData();
+
+		// the tokenized sentence (for training, empty for prediction)
+		String tokSentence = (String) carrier.getSource();
+
+		if (tokSentence.length() == 0) {
 			// in prediction mode tokSentence is just an empty string
-			labels = new ArrayList<String>();
+			makeUnits(orgSentence, units, wSpaces);
 			for (int i = 0; i < units.size(); i++)
 				labels.add("N");
+			return true;
 		}
 
+		// in evaluation mode get the units and their labels by aligning
+		// the input sentence with tokSentence
+		int divergence = makeUnitsAndLabels(orgSentence, tokSentence, units,
+				labels, wSpaces);
+
 		// check integrity !
-		if (units.size() != labels.size() || labels.size() != wSpaces.size()) {
+		if (divergence >= 0) {
 			int pos = -1;
 			if (null != carrier.getName())
 				pos = ((Integer) carrier.getName()).intValue() + 1;
-			LOGGER.error(
-					"Something's wrong with unit creation. Number of units: {}; number of labels: {}; number of whitespaces: {}",
-					new Object[] { units.size(), labels.size(), wSpaces.size() });
 			LOGGER.error("pipe() - Unit and label extraction produced failure (at position "
 					+ (pos == -1 ? "unknown" : pos)
-					+ "). Omitting sentences for feature generation...\n"
-					+ orgSentence + "\n" + tokSentence);
-
-			// just omit this sentence for tokenization, but throw the error
-			// from above
-			carrier.setData(data);
-			carrier.setTarget(target);
-			carrier.setName(units);
-			return carrier;
+					+ "): original and tokenized sentence diverge at character "
+					+ divergence
+					+ ". Omitting sentences for feature generation...\n"
+					+ orgSentence.substring(0, divergence)
+					+ "<HERE>"
+					+ orgSentence.substring(divergence)
+					+ "\n"
+					+ tokSentence);
+			return false;
 		}
+		return true;
+	}
 
-		// make the features for each unit
-		for (int i = 0; i < units.size(); i++) {
+	/**
+	 * makes the features of a unit
+	 * 
+	 * @param unit
+	 * @param wSpace
+	 *            the white space info of the unit (WS or noWS)
+	 * @param superUnit
+	 *            the super-unit analysis of the previous unit of the sentence,
+	 *            is only recomputed if the unit belongs to another super-unit
+	 * @param features
+	 *            where the features are added to
+	 */
+	void addFeatures(Unit unit, String wSpace, SuperUnitFeatures superUnit,
+			FeatureSink features) {
+		addFeatures(unit.rep, unit.superUnitRep, wSpace.equals("WS"),
+				superUnit, features);
+	}
+
+	/**
+	 * makes the features of the i-th unit of a buffer
+	 * 
+	 * @param superUnit
+	 *            see above
+	 * @param features
+	 *            where the features are added to
+	 */
+	void addFeatures(UnitBuffer units, int i, SuperUnitFeatures superUnit,
+			FeatureSink features) {
+		addFeatures(units.getUnitRep(i), units.getSuperUnitRep(i), units
+				.hasRightWhiteSpace(i), superUnit, features);
+	}
 
-			String unitRep = units.get(i).rep;
-			String superUnitRep = units.get(i).superUnitRep;
-			String label = labels.get(i);
+	private void addFeatures(String unitRep, String superUnitRep,
+			boolean hasRightWhiteSpace, SuperUnitFeatures superUnit,
+			FeatureSink features) {
 
-			Token token = new Token(unitRep);
+		FeatureTemplates templates = getTemplates();
+		superUnit.analyze(superUnitRep, templates);
 
-			/*
-			 * features based on information on unit only
-			 */
+		/*
+		 * features based on information on unit only
+		 */
 
-			// the unit itself
-			token.setFeatureValue("U_lex=" + unitRep, 1);
-
-			// white space to the right
-			if (wSpaces.get(i).equals("WS"))
-				token.setFeatureValue("U_HasRightWhiteSpace", 1);
-
-			// is one of the token boundary symbols
-			if (tbSymbols.contains(unitRep))
-				token.setFeatureValue("U_isTokenBoundarySymbol", 1);
-
-			// word class -- currently, we use brief word class only!
-			// String wc = unitRep;
-			// wc = wc.replaceAll("[A-Z]", "A");
-			// wc = wc.replaceAll("[a-z]", "a");
-			// wc = wc.replaceAll("[0-9]", "0");
-			// wc = wc.replaceAll("[^A-Za-z0-9]", "x");
-			// token.setFeatureValue("U_WC=" + wc, 1);
-
-			// brief word class
-			String bwc = unitRep;
-			bwc = bwc.replaceAll("[A-Z]+", "A");
-			bwc = bwc.replaceAll("[a-z]+", "a");
-			bwc = bwc.replaceAll("[0-9]+", "0");
-			bwc = bwc.replaceAll("[^A-Za-z0-9]+", "x");
-			token.setFeatureValue("U_BWC=" + bwc, 1);
-
-			// length of the token
+		// the unit itself
+		if (templates.unitLex)
+			features.add("U_lex=", unitRep);
+
+		// white space to the right
+		if (templates.hasRightWhiteSpace && hasRightWhiteSpace)
+			features.add("U_HasRightWhiteSpace");
+
+		// is one of the token boundary symbols
+		if (templates.isTokenBoundarySymbol
+				&& getTokenBoundarySymbols().contains(unitRep))
+			features.add("U_isTokenBoundarySymbol");
+
+		// word class -- currently, we use brief word class only!
+		// String wc = unitRep;
+		// wc = wc.replaceAll("[A-Z]", "A");
+		// wc = wc.replaceAll("[a-z]", "a");
+		// wc = wc.replaceAll("[0-9]", "0");
+		// wc = wc.replaceAll("[^A-Za-z0-9]", "x");
+		// features.add("U_WC=", wc);
+
+		// brief word class, i.e. [A-Z]+ -> A, [a-z]+ -> a, [0-9]+ -> 0 and
+		// anything else -> x
+		if (templates.unitBwc)
+			features.add("U_BWC=", FeatureScanner.unitBriefWordClass(unitRep));
+
+		// length of the token
+		if (templates.unitSize) {
 			if (unitRep.length() <= 3)
-				token.setFeatureValue("U_SIZE1", 1);
+				features.add("U_SIZE1");
 			else if (unitRep.length() <= 6)
-				token.setFeatureValue("U_SIZE2", 1);
+				features.add("U_SIZE2");
 			else
-				token.setFeatureValue("U_SIZE3", 1);
+				features.add("U_SIZE3");
+		}
 
-			// abbreviation classes
-			if (unitRep.matches("[" + CAPS + "]\\."))
-				token.setFeatureValue("U_ABBR1", 1);
+		// orthographic features, see FeatureScanner for the regular
+		// expressions they stand for, only the flags of the used templates
+		// are kept
+		int unitFlags = 0;
+		if (templates.unitFlags != 0)
+			unitFlags = FeatureScanner.scanUnit(unitRep) & templates.unitFlags;
 
-			if (unitRep.matches("([" + CAPS + LOW + "]\\.)+"))
-				token.setFeatureValue("U_ABBR2", 1);
+		// abbreviation classes
+		if ((unitFlags & FeatureScanner.U_ABBR1) != 0)
+			features.add("U_ABBR1");
 
-			if (unitRep.matches("[" + LOW + "]+\\."))
-				token.setFeatureValue("U_ABBR3", 1);
+		if ((unitFlags & FeatureScanner.U_ABBR2) != 0)
+			features.add("U_ABBR2");
 
-			// some of our default regexp features
-			if (unitRep.matches("[" + CAPS + "].*"))
-				token.setFeatureValue("U_INITCAPS", 1);
+		if ((unitFlags & FeatureScanner.U_ABBR3) != 0)
+			features.add("U_ABBR3");
 
-			if (unitRep.matches("[" + CAPS + "]"))
-				token.setFeatureValue("U_ONECAPS", 1);
+		// some of our default regexp features
+		if ((unitFlags & FeatureScanner.U_INITCAPS) != 0)
+			features.add("U_INITCAPS");
 
-			if (unitRep.matches("[" + CAPS + "]+"))
-				token.setFeatureValue("U_ALLCAPS", 1);
+		if ((unitFlags & FeatureScanner.U_ONECAPS) != 0)
+			features.add("U_ONECAPS");
 
-			if (unitRep.matches("(.*[" + CAPS + LOW + "].*[0-9].*|.*[0-9].*["
-					+ CAPS + LOW + "].*)"))
-				token.setFeatureValue("U_ALPHANUMERIC", 1);
+		if ((unitFlags & FeatureScanner.U_ALLCAPS) != 0)
+			features.add("U_ALLCAPS");
 
-			if (unitRep.matches("[IVXDLCM]+"))
-				token.setFeatureValue("U_ROMAN", 1);
+		if ((unitFlags & FeatureScanner.U_ALPHANUMERIC) != 0)
+			features.add("U_ALPHANUMERIC");
 
-			if (unitRep.matches(".*\\b[IVXDLCM]+\\b.*"))
-				token.setFeatureValue("U_HASROMAN", 1);
+		if ((unitFlags & FeatureScanner.U_ROMAN) != 0)
+			features.add("U_ROMAN");
 
-			if (unitRep.matches("[0-9]+"))
-				token.setFeatureValue("U_NATURALNUMBER", 1);
+		if ((unitFlags & FeatureScanner.U_HASROMAN) != 0)
+			features.add("U_HASROMAN");
 
-			if (unitRep.matches("[-0-9]+[.,]+[0-9.,]+"))
-				token.setFeatureValue("U_REALNUMBER", 1);
+		if ((unitFlags & FeatureScanner.U_NATURALNUMBER) != 0)
+			features.add("U_NATURALNUMBER");
 
-			if (unitRep.matches(".*[0-9]+.*"))
-				token.setFeatureValue("U_HASDIGITS", 1);
+		if ((unitFlags & FeatureScanner.U_REALNUMBER) != 0)
+			features.add("U_REALNUMBER");
 
-			if (unitRep.matches("(\\(.*|\\[.*)"))
-				token.setFeatureValue("U_BEGINBRACKETS", 1);
+		if ((unitFlags & FeatureScanner.U_HASDIGITS) != 0)
+			features.add("U_HASDIGITS");
 
-			/*
-			 * features based on super-unit information
-			 */
+		if ((unitFlags & FeatureScanner.U_BEGINBRACKETS) != 0)
+			features.add("U_BEGINBRACKETS");
 
-			// add superunit as a feature
-			token.setFeatureValue("SU_lex=" + superUnitRep, 1);
+		/*
+		 * features based on super-unit information
+		 */
 
-			// check some simple regexp
-			if (superUnitRep.matches(".*[\\w]]+.*")) {
-				token.setFeatureValue("SU_isAlphanumeric", 1);
-			}
+		// add superunit as a feature
+		if (templates.superUnitLex)
+			features.add("SU_lex=", superUnitRep);
 
-			// some bracket checks
-			if (superUnitRep.matches("\\(.*\\)|\\[.*\\]")) {
-				// check whether superunit is completely bracketed
-				token.setFeatureValue("SU_inBrackets", 1);
-			} else if (superUnitRep.matches(".*\\(.*\\).*|.*\\[.*\\].*")) {
-				// check whether superunit contains closed brackets
-				token.setFeatureValue("SU_hasClosedBrackets", 1);
-			} else if (superUnitRep.matches(".*\\(.*|.*\\[.*")) {
-				// check whether superunit contains has left bracket only
-				token.setFeatureValue("SU_hasLeftBracketOnly", 1);
-			} else if (superUnitRep.matches(".*\\).*|.*\\].*")) {
-				// check whether superunit contains has right bracket only
-				token.setFeatureValue("SU_hasRightBracketOnly", 1);
-			}
+		int superUnitFlags = superUnit.flags;
 
-			// check whether superunit is or contains an arrow
-			// and unit is part of that arrow
-			if (superUnitRep.matches(".*-->.*")
-					&& (unitRep.equals("-") || unitRep.equals(">"))) {
-				token.setFeatureValue("SU_isPartOfArrow", 1);
-			}
+		// check some simple regexp
+		if ((superUnitFlags & FeatureScanner.SU_IS_ALPHANUMERIC) != 0) {
+			features.add("SU_isAlphanumeric");
+		}
 
-			// check for a (double) dash
-			if (superUnitRep.matches("----")) {
-				token.setFeatureValue("SU_isDoubleDash", 1);
-			} else if (superUnitRep.matches(".*----.*")) {
-				token.setFeatureValue("SU_hasDoubleDash", 1);
-			} else if (superUnitRep.matches("--")) {
-				token.setFeatureValue("SU_isDash", 1);
-			} else if (superUnitRep.matches(".*--.*")) {
-				token.setFeatureValue("SU_hasDash", 1);
-			}
+		// some bracket checks
+		if ((superUnitFlags & FeatureScanner.SU_IN_BRACKETS) != 0) {
+			// check whether superunit is completely bracketed
+			features.add("SU_inBrackets");
+		} else if ((superUnitFlags & FeatureScanner.SU_HAS_CLOSED_BRACKETS) != 0) {
+			// check whether superunit contains closed brackets
+			features.add("SU_hasClosedBrackets");
+		} else if ((superUnitFlags & FeatureScanner.SU_HAS_LEFT_BRACKET_ONLY) != 0) {
+			// check whether superunit contains has left bracket only
+			features.add("SU_hasLeftBracketOnly");
+		} else if ((superUnitFlags & FeatureScanner.SU_HAS_RIGHT_BRACKET_ONLY) != 0) {
+			// check whether superunit contains has right bracket only
+			features.add("SU_hasRightBracketOnly");
+		}
 
-			// check for -/- or +/- etc.
-			if (superUnitRep.matches(".*[+-]/[+-].*")) {
-				token.setFeatureValue("SU_hasPlusMinus", 1);
-			}
+		// check whether superunit is or contains an arrow
+		// and unit is part of that arrow
+		if ((superUnitFlags & FeatureScanner.SU_HAS_ARROW) != 0
+				&& (unitRep.equals("-") || unitRep.equals(">"))) {
+			features.add("SU_isPartOfArrow");
+		}
 
-			// check for + and - in brackets
-			if (superUnitRep.matches(".*\\([+-]\\).*")) {
-				token.setFeatureValue("SU_PMwithBrackets", 1);
-			}
+		// check for a (double) dash
+		if ((superUnitFlags & FeatureScanner.SU_IS_DOUBLE_DASH) != 0) {
+			features.add("SU_isDoubleDash");
+		} else if ((superUnitFlags & FeatureScanner.SU_HAS_DOUBLE_DASH) != 0) {
+			features.add("SU_hasDoubleDash");
+		} else if ((superUnitFlags & FeatureScanner.SU_IS_DASH) != 0) {
+			features.add("SU_isDash");
+		} else if ((superUnitFlags & FeatureScanner.SU_HAS_DASH) != 0) {
+			features.add("SU_hasDash");
+		}
 
-			// check for a possible enumeration
-			if (superUnitRep.matches("\\(([0-9]|[a-h]|i|ii|iii|iv|v)\\)")) {
-				token.setFeatureValue("SU_isEnumeration", 1);
-			}
+		// check for -/- or +/- etc.
+		if ((superUnitFlags & FeatureScanner.SU_HAS_PLUS_MINUS) != 0) {
+			features.add("SU_hasPlusMinus");
+		}
 
-			// check for plural s in brackets
-			if (superUnitRep.matches(".*\\(s\\)")) {
-				token.setFeatureValue("SU_hasBracketedPlural", 1);
-			}
+		// check for + and - in brackets
+		if ((superUnitFlags & FeatureScanner.SU_PM_WITH_BRACKETS) != 0) {
+			features.add("SU_PMwithBrackets");
+		}
 
-			// check for genitive with apostrophe
-			if (superUnitRep.matches(".*'s")) {
-				token.setFeatureValue("SU_hasGenitive", 1);
-			}
+		// check for a possible enumeration
+		if ((superUnitFlags & FeatureScanner.SU_IS_ENUMERATION) != 0) {
+			features.add("SU_isEnumeration");
+		}
+
+		// check for plural s in brackets
+		if ((superUnitFlags & FeatureScanner.SU_HAS_BRACKETED_PLURAL) != 0) {
+			features.add("SU_hasBracketedPlural");
+		}
+
+		// check for genitive with apostrophe
+		if ((superUnitFlags & FeatureScanner.SU_HAS_GENITIVE) != 0) {
+			features.add("SU_hasGenitive");
+		}
 
-			// check length of superunit
+		// check length of superunit
+		if (templates.superUnitSize) {
 			if (superUnitRep.length() <= 4)
-				token.setFeatureValue("SU_SIZE1", 1);
+				features.add("SU_SIZE1");
 			else if (superUnitRep.length() <= 8)
-				token.setFeatureValue("SU_SIZE2", 1);
+				features.add("SU_SIZE2");
 			else
-				token.setFeatureValue("SU_SIZE3", 1);
-
-			// check whether superunit might be a chemical
-			// therefor we check the number typical special characters contained
-			if (superUnitRep.length() > 6
-					&& superUnitRep.matches("(.*[\\W].*){5,}")
-					&& !superUnitRep.contains("-->")) {
-				token.setFeatureValue("SU_isChemical", 1);
-			}
-
-			// brief word class
-			String su_bwc = superUnitRep;
-			su_bwc = su_bwc.replaceAll("[" + CAPS + "]+", "A");
-			su_bwc = su_bwc.replaceAll("[" + LOW + "]+", "a");
-			su_bwc = su_bwc.replaceAll("[0-9]+", "0");
-			su_bwc = su_bwc.replaceAll("[^" + CAPS + LOW + "0-9]+", "x");
-			token.setFeatureValue("SU_BWC=" + su_bwc, 1);
-
-			// check for url
-			if (superUnitRep.matches("\\(?www\\..*?\\)?")) {
-				// LOGGER.trace("pipe() - "su: wwwURL: " + superunit);
-				token.setFeatureValue("SU_wwwURL", 1);
-			} else if (superUnitRep.matches("\\(?http:.*?\\)?")
-					|| superUnitRep.matches("\\(?ftp:.*?\\)?")) {
-				// LOGGER.trace("pipe() - su: httpURL: " + superunit);
-				token.setFeatureValue("SU_httpURL", 1);
-			}
-
-			/*
-			 * now add the features and the label
-			 */
-			data.add(token);
-			target.add(label);
+				features.add("SU_SIZE3");
 		}
 
-		carrier.setData(data); // the features per token
-		carrier.setTarget(target); // the labels per token
-		carrier.setName(units);
+		// check whether superunit might be a chemical
+		// therefor we check the number typical special characters contained
+		if ((superUnitFlags & FeatureScanner.SU_IS_CHEMICAL) != 0) {
+			features.add("SU_isChemical");
+		}
 
-		carrier.setSource(wSpaces);
+		// brief word class
+		if (templates.superUnitBwc)
+			features.add("SU_BWC=", superUnit.bwc);
 
-		return carrier;
+		// check for url
+		if ((superUnitFlags & FeatureScanner.SU_WWW_URL) != 0) {
+			features.add("SU_wwwURL");
+		} else if ((superUnitFlags & FeatureScanner.SU_HTTP_URL) != 0) {
+			features.add("SU_httpURL");
+		}
 	}
 
 	/**
 	 * 
 	 * makes all units for a sentence (i.e. white space and special character
-	 * splits)
+	 * splits). See makeUnits(CharSequence, int, UnitBuffer).
 	 * 
 	 * @param orgSentence
 	 * @param units
@@ -349,237 +417,484 @@ class Sentence2TokenPipe extends Pipe {
 
 		LOGGER.trace("makeUnits() - making units...");
 
-		/*
-		 * read in the units and the white space info
-		 */
-		StringBuffer sentence = new StringBuffer(orgSentence);
+		UnitBuffer buffer = new UnitBuffer();
+		makeUnits(orgSentence, orgSentence.length(), buffer);
+		units.addAll(buffer.toUnits());
+		for (int i = 0; i < buffer.size(); i++)
+			wSpaces.add(buffer.hasRightWhiteSpace(i) ? "WS" : "noWS");
+
+		if (LOGGER.isTraceEnabled()) {
+			LOGGER.trace("makeUnits() -org: " + orgSentence);
+			LOGGER.trace("makeUnits() - " + units.toString() + " -- "
+					+ wSpaces.toString());
+		}
+	}
+
+	/**
+	 * makes all units for the beginning of a sentence. The sentence is walked
+	 * once with a cursor; no text is copied.
+	 * 
+	 * @param sentence
+	 * @param length
+	 *            the length of the part of the sentence to be split, e.g.
+	 *            without a final EOS symbol
+	 * @param units
+	 *            the buffer, it is reset to the sentence
+	 */
+	void makeUnits(CharSequence sentence, int length, UnitBuffer units) {
 
-		ArrayList<String> superUnitAlphabet = getSuperUnits(orgSentence);
+		units.reset(sentence);
 
+		// the super-unit the next unit belongs to. Note that the super-unit
+		// counter is only advanced by a white space following a unit which is
+		// not a token boundary symbol; this is how all existing models have
+		// been trained, so it must not be changed.
 		int superUnitIterator = 0;
+		SuperUnitCursor superUnits = new SuperUnitCursor(sentence, length);
+		// index of the current super-unit in the buffer
+		int superUnit = -1;
 
-		StringBuffer currUnit = new StringBuffer();
+		// begin of the unit currently read
 		int start = 0;
-		int end = 0;
 
-		while (sentence.length() > 0) {
-			String c = String.valueOf(sentence.charAt(0));
-			LOGGER.trace("makeUnits() - " + c);
+		for (int pos = 0; pos < length; pos++) {
+			char c = sentence.charAt(pos);
 
-			if (Pattern.matches("\\s", c)) {
+			if (isWhiteSpace(c)) {
 				// at any whitespace position
 				// store the unit found till this position
-
-				LOGGER.trace("makeUnits() - WS");
-
-				if (currUnit.length() > 0) {
-					Unit unit = new Unit(start, end, currUnit.toString(),
-							superUnitAlphabet.get(superUnitIterator));
-					// units.add(currUnit.toString());
-					units.add(unit);
-					LOGGER.trace("makeUnits() -adding unit:" + currUnit + "!");
-					currUnit.delete(0, currUnit.length());
-					wSpaces.add("WS");
-					// labels.add("P");
-
-					// super units
+				if (pos > start) {
+					superUnit = addSuperUnit(units, superUnits,
+							superUnitIterator, superUnit);
+					units.add(start, pos, superUnit, true);
 					superUnitIterator++;
 				}
+				start = pos + 1;
 
-				sentence.deleteCharAt(0);
-				LOGGER.trace("makeUnits() - " + units.toString() + " -- "
-						+ wSpaces.toString());
+			} else if (isTokenBoundarySymbol(c)) {
+				superUnit = addSuperUnit(units, superUnits, superUnitIterator,
+						superUnit);
+				// add current unit
+				if (pos > start)
+					units.add(start, pos, superUnit, false);
+
+				// add tb-character unit, check whether next character is a
+				// white space
+				units.add(pos, pos + 1, superUnit, pos + 1 < length
+						&& isWhiteSpace(sentence.charAt(pos + 1)));
+				start = pos + 1;
+			}
+		}
 
-				// set unit offset
-				end++;
-				start = end;
+		// add last unit
+		if (length > start) {
+			superUnit = addSuperUnit(units, superUnits, superUnitIterator,
+					superUnit);
+			units.add(start, length, superUnit, false);
+		}
+	}
 
-			} else if (tbSymbols.contains(c)) {
-				LOGGER.trace("makeUnits() - TB");
+	/**
+	 * adds the super-unit with the given number to the buffer unless it is
+	 * the current one
+	 * 
+	 * @return the index of the super-unit in the buffer
+	 */
+	private int addSuperUnit(UnitBuffer units, SuperUnitCursor superUnits,
+			int superUnitIterator, int current) {
+		if (superUnits.index == superUnitIterator && current >= 0)
+			return current;
+		superUnits.advance(superUnitIterator);
+		return units.addSuperUnit(superUnits.begin, superUnits.end, null);
+	}
 
-				// add current unit
-				if (currUnit.length() > 0) {
-					Unit unit = new Unit(start, end, currUnit.toString(),
-							superUnitAlphabet.get(superUnitIterator));
-					// units.add(currUnit.toString());
-					units.add(unit);
-					LOGGER.trace("makeUnits() - Adding unit:" + currUnit + "!");
-					currUnit.delete(0, currUnit.length());
-					wSpaces.add("noWS");
+	/**
+	 * makes the units of a sentence together with their labels in one pass
+	 * by aligning the original sentence with its tokenized version. The
+	 * units and white space infos are the same as those of makeUnits, the
+	 * labels are the same as those of makeLabels.
+	 * 
+	 * @param orgSentence
+	 *            the original sentence
+	 * @param tokSentence
+	 *            the tokenized sentence
+	 * @param units
+	 *            the single units of a sentence (w/o white space)
+	 * @param labels
+	 *            the labels (P: end of token, N: no token end) of the units
+	 * @param wSpaces
+	 *            info about white spaces from the testing data
+	 * @return -1 if both sentences could be aligned, otherwise the position
+	 *         in the original sentence where they diverge
+	 */
+	public int makeUnitsAndLabels(String orgSentence, String tokSentence,
+			ArrayList<Unit> units, ArrayList<String> labels,
+			ArrayList<String> wSpaces) {
 
-					// set unit offset
-					start = end;
-					LOGGER.trace("makeUnits() - SE:" + start + "." + end);
-				}
+		LOGGER.trace("makeUnitsAndLabels() - making units and labels...");
 
-				// add tb-character unit
-				currUnit.append(c);
-				LOGGER.trace("makeUnits() - adding unit:" + currUnit + "!!");
-
-				if (sentence.length() > 1) { // check whether next token is a
-					// white space
-					String c1 = String.valueOf(sentence.charAt(1));
-					if (Pattern.matches("\\s", c1)) {
-						wSpaces.add("WS");
-					} else {
-						wSpaces.add("noWS");
-					}
-				} else {
-					// no whitespace as last character
-					wSpaces.add("noWS");
-				}
+		int length = orgSentence.length();
 
-				if (currUnit.length() > 0) {
-					end++;
-					LOGGER.trace("makeUnits() - SE:" + start + "." + end);
-					Unit unit = new Unit(start, end, currUnit.toString(),
-							superUnitAlphabet.get(superUnitIterator));
-					units.add(unit);
-					currUnit.delete(0, currUnit.length());
-				}
-				sentence.deleteCharAt(0);
+		// see makeUnits on how the super-units are counted
+		int superUnitIterator = 0;
+		SuperUnitCursor superUnits = new SuperUnitCursor(orgSentence,
+				orgSentence.length());
+		TokenizedCursor tokenized = new TokenizedCursor(tokSentence);
 
-				// set unit offset
-				start = end;
+		// begin of the unit currently read
+		int start = 0;
 
-				LOGGER.trace("makeUnits() - " + units.toString() + " -- "
-						+ wSpaces.toString());
+		for (int pos = 0; pos < length; pos++) {
+			char c = orgSentence.charAt(pos);
 
-			} else {
-				LOGGER.trace("makeUnits() - token");
-				currUnit.append(c);
-				sentence.deleteCharAt(0);
+			if (isWhiteSpace(c)) {
+				if (pos > start) {
+					if (!tokenized.align(orgSentence, start, pos, false, labels))
+						return tokenized.divergence;
+					units.add(new Unit(start, pos, orgSentence.substring(
+							start, pos), superUnits.get(superUnitIterator)));
+					wSpaces.add("WS");
+					superUnitIterator++;
+				}
+				start = pos + 1;
+
+			} else if (isTokenBoundarySymbol(c)) {
+				if (pos > start) {
+					if (!tokenized.align(orgSentence, start, pos, false, labels))
+						return tokenized.divergence;
+					units.add(new Unit(start, pos, orgSentence.substring(
+							start, pos), superUnits.get(superUnitIterator)));
+					wSpaces.add("noWS");
+				}
 
-				// set unit offset
-				end++;
+				if (!tokenized.align(orgSentence, pos, pos + 1, true, labels))
+					return tokenized.divergence;
+				units.add(new Unit(pos, pos + 1, orgSentence.substring(pos,
+						pos + 1), superUnits.get(superUnitIterator)));
+				if (pos + 1 < length && isWhiteSpace(orgSentence.charAt(pos + 1)))
+					wSpaces.add("WS");
+				else
+					wSpaces.add("noWS");
+				start = pos + 1;
 			}
-
 		}
 
 		// add last unit
-		LOGGER.trace("makeUnits() - " + orgSentence);
-		if (currUnit.length() > 0) {
-			Unit unit = new Unit(start, end, currUnit.toString(),
-					superUnitAlphabet.get(superUnitIterator));
-			units.add(unit);
+		if (length > start) {
+			if (!tokenized.align(orgSentence, start, length, false, labels))
+				return tokenized.divergence;
+			units.add(new Unit(start, length, orgSentence.substring(start,
+					length), superUnits.get(superUnitIterator)));
 			wSpaces.add("noWS");
 		}
 
-		String sent = "";
-		for (int j = 0; j < units.size(); j++) {
-			LOGGER.trace("makeUnits() - " + units.get(j) + "\t"
-					+ wSpaces.get(j));
-			String sp = (wSpaces.get(j).equals("WS")) ? " " : "";
-			sent += units.get(j).rep + sp;
-		}
-
-		LOGGER.trace("makeUnits() -org: " + orgSentence);
-		LOGGER.trace("makeUnits() -new: " + sent);
-
-		LOGGER.trace("makeUnits() - " + units.toString());
+		// nothing but white space may be left in the tokenized sentence
+		if (!tokenized.atEnd())
+			return length;
 
+		if (LOGGER.isTraceEnabled())
+			LOGGER.trace("makeUnitsAndLabels() - " + units.toString() + " -- "
+					+ labels.toString() + " -- " + wSpaces.toString());
+		return -1;
 	}
 
 	/**
 	 * make the label sequence for the corresponding unit sequence
 	 * 
-	 * @param orgSentence
-	 * @param units
-	 *            the single units of a sentence (w/o white space)
-	 * @param wSpaces
-	 *            info about white spaces from the testing data
+	 * @param tokSentence
+	 *            the tokenized sentence
+	 * @return the labels (P: end of token, N: no token end) of the units
 	 */
 	public ArrayList<String> makeLabels(String tokSentence) {
 
 		LOGGER.trace("makeLabels()");
 
 		ArrayList<String> labels = new ArrayList<String>();
-		/*
-		 * read in the units and the white space info
-		 */
-		StringBuffer sentence = new StringBuffer(tokSentence);
-		StringBuffer currUnit = new StringBuffer();
-
-		while (sentence.length() > 0) {
-			String c = String.valueOf(sentence.charAt(0));
-			LOGGER.trace("makeLabels() - " + c);
-
-			if (Pattern.matches("\\s", c)) { // at any whitespace
-				LOGGER.trace("makeLabels() - found WS");
-				if (currUnit.length() > 0) {
-					currUnit.delete(0, currUnit.length());
-					LOGGER.trace("makeLabels() - adding label P");
-					labels.add("P");
-				}
-				sentence.deleteCharAt(0);
-			} else if (tbSymbols.contains(c)) {
-				LOGGER.trace("makeLabels() - found TB");
 
+		int length = tokSentence.length();
+
+		// begin of the unit currently read
+		int start = 0;
+
+		for (int pos = 0; pos < length; pos++) {
+			char c = tokSentence.charAt(pos);
+
+			if (isWhiteSpace(c)) { // at any whitespace
+				if (pos > start)
+					labels.add("P");
+				start = pos + 1;
+			} else if (isTokenBoundarySymbol(c)) {
 				// add current unit
-				if (currUnit.length() > 0) {
-					currUnit.delete(0, currUnit.length());
-					LOGGER.trace("makeLabels() - adding label N");
+				if (pos > start)
 					labels.add("N");
-				}
 
-				// add tb-character unit
-				currUnit.append(c);
-
-				if (sentence.length() > 1) { // check whether next token is a
-					// white space
-					String c1 = String.valueOf(sentence.charAt(1));
-					if (Pattern.matches("\\s", c1)) {
-						LOGGER.trace("makeLabels() - label P");
-						labels.add("P");
-					} else {
-						LOGGER.trace("makeLabels() - label N");
-						labels.add("N");
-					}
-				} else {
-					// no whitespace as last character
-					LOGGER.trace("makeLabels() - label N");
+				// add tb-character unit, check whether next character is a
+				// white space
+				if (pos + 1 < length && isWhiteSpace(tokSentence.charAt(pos + 1)))
+					labels.add("P");
+				else
 					labels.add("N");
-				}
-
-				if (currUnit.length() > 0) {
-					currUnit.delete(0, currUnit.length());
-				}
-				sentence.deleteCharAt(0);
-
-			} else {
-				LOGGER.trace("makeLabels() - token");
-				currUnit.append(c);
-				sentence.deleteCharAt(0);
+				start = pos + 1;
 			}
-
 		}
 
 		// add last unit
-		LOGGER.trace("makeLabels() -  " + tokSentence);
-		if (currUnit.length() > 0) {
+		if (length > start) {
 			labels.add("N");
 		}
-		LOGGER.trace("makeLabels() - " + labels.toString());
+
+		if (LOGGER.isTraceEnabled())
+			LOGGER.trace("makeLabels() - " + labels.toString());
 
 		return labels;
 	}
 
 	/**
-	 * returns a string array of all superunits (i.e. white space split)
+	 * white space as matched by \s
+	 */
+	static boolean isWhiteSpace(char c) {
+		return (CharClasses.of(c) & CharClasses.WHITE_SPACE) != 0;
+	}
+
+	/**
+	 * Switches off feature templates. This has to be done before training,
+	 * as the choice is stored with the model.
 	 * 
-	 * @param line
-	 * @return
+	 * @param disabled
+	 *            names of the templates not to use, see
+	 *            FeatureTemplates.getNames(), null or empty to use all
+	 * @throws IllegalArgumentException
+	 *             if there is an unknown template name
 	 */
-	private ArrayList<String> getSuperUnits(String line) {
+	public void setDisabledTemplates(Set<String> disabled) {
+		if (disabled == null || disabled.isEmpty()) {
+			disabledTemplates = null;
+			templates = FeatureTemplates.ALL;
+		} else {
+			templates = new FeatureTemplates(disabled);
+			disabledTemplates = new HashSet<String>(disabled);
+		}
+	}
 
-		Matcher m = splitPattern.matcher(line);
-		ArrayList<String> superUnits = new ArrayList<String>();
+	/**
+	 * @return the names of the feature templates which are not used
+	 */
+	public Set<String> getDisabledTemplates() {
+		if (disabledTemplates == null)
+			return Collections.emptySet();
+		return Collections.unmodifiableSet(disabledTemplates);
+	}
 
-		while (m.find()) {
-			superUnits.add(m.group());
+	private FeatureTemplates getTemplates() {
+		FeatureTemplates t = templates;
+		if (t == null) {
+			t = disabledTemplates == null ? FeatureTemplates.ALL
+					: new FeatureTemplates(disabledTemplates);
+			templates = t;
 		}
-		return superUnits;
+		return t;
+	}
+
+	/**
+	 * checks whether a character is one of the token boundary symbols of
+	 * this pipe
+	 */
+	boolean isTokenBoundarySymbol(char c) {
+		return getTokenBoundarySymbols().contains(c);
+	}
 
+	/**
+	 * As the symbols are stored with the model, the lookup table is derived
+	 * from tbSymbols on first use. Usually, these are the default symbols,
+	 * so the shared instance is used.
+	 */
+	private TokenBoundarySymbols getTokenBoundarySymbols() {
+		TokenBoundarySymbols lookup = tbLookup;
+		if (lookup == null) {
+			lookup = TokenBoundarySymbols.getInstance();
+			if (!lookup.getSymbols().equals(tbSymbols))
+				lookup = new TokenBoundarySymbols(tbSymbols);
+			tbLookup = lookup;
+		}
+		return lookup;
+	}
+
+	/**
+	 * Receives the features of a unit. Lexical features are handed over as
+	 * prefix and value so that consumers which do not need the feature name
+	 * do not have to build it.
+	 */
+	interface FeatureSink {
+
+		/**
+		 * @param feature
+		 *            the name of a binary feature
+		 */
+		void add(String feature);
+
+		/**
+		 * @param prefix
+		 *            the name of a lexical feature, e.g. "U_lex="
+		 * @param value
+		 *            its value
+		 */
+		void add(String prefix, String value);
+	}
+
+	/**
+	 * The analysis of a super-unit which is the same for all of its units.
+	 */
+	static class SuperUnitFeatures {
+
+		private String superUnitRep;
+
+		// see FeatureScanner.scanSuperUnit()
+		int flags;
+
+		// brief word class
+		String bwc;
+
+		/**
+		 * analyzes the super-unit unless it was the last one analyzed, only
+		 * as far as needed for the used templates
+		 */
+		void analyze(String superUnitRep, FeatureTemplates templates) {
+			if (superUnitRep.equals(this.superUnitRep))
+				return;
+			this.superUnitRep = superUnitRep;
+
+			flags = 0;
+			if (templates.superUnitFlags != 0)
+				flags = FeatureScanner.scanSuperUnit(superUnitRep)
+						& templates.superUnitFlags;
+
+			bwc = null;
+			if (templates.superUnitBwc)
+				bwc = FeatureScanner.superUnitBriefWordClass(superUnitRep);
+		}
+	}
+
+	/**
+	 * Adds the features as feature values to a MALLET token.
+	 */
+	private static class TokenFeatures implements FeatureSink {
+
+		Token token;
+
+		public void add(String feature) {
+			token.setFeatureValue(feature, 1);
+		}
+
+		public void add(String prefix, String value) {
+			token.setFeatureValue(prefix + value, 1);
+		}
+	}
+
+	/**
+	 * Walks through the tokenized sentence along with the units of the
+	 * original sentence and labels each unit by what follows it in the
+	 * tokenized sentence, exactly like makeLabels does.
+	 */
+	private class TokenizedCursor {
+
+		private final String sentence;
+
+		private int pos = 0;
+
+		// position in the original sentence where the alignment failed
+		int divergence = -1;
+
+		TokenizedCursor(String sentence) {
+			this.sentence = sentence;
+		}
+
+		/**
+		 * finds the next unit of the tokenized sentence, compares it to the
+		 * given unit of the original sentence and adds its label
+		 * 
+		 * @return false if the unit is not found at the current position
+		 */
+		boolean align(String orgSentence, int begin, int end,
+				boolean boundarySymbol, ArrayList<String> labels) {
+			while (pos < sentence.length() && isWhiteSpace(sentence.charAt(pos)))
+				pos++;
+			for (int i = begin; i < end; i++, pos++) {
+				if (pos >= sentence.length()
+						|| sentence.charAt(pos) != orgSentence.charAt(i)) {
+					divergence = i;
+					return false;
+				}
+			}
+
+			if (pos == sentence.length()) {
+				// no whitespace as last character
+				labels.add("N");
+			} else if (isWhiteSpace(sentence.charAt(pos))) {
+				labels.add("P");
+			} else if (boundarySymbol || isTokenBoundarySymbol(sentence.charAt(pos))) {
+				labels.add("N");
+			} else {
+				// the unit goes on in the tokenized sentence
+				divergence = end;
+				return false;
+			}
+			return true;
+		}
+
+		boolean atEnd() {
+			while (pos < sentence.length() && isWhiteSpace(sentence.charAt(pos)))
+				pos++;
+			return pos == sentence.length();
+		}
+	}
+
+	/**
+	 * Hands out the super-units (i.e. white space delimited character
+	 * sequences) of a sentence by their index. Super-units are only ever
+	 * requested in ascending order, so the sentence is scanned just once.
+	 */
+	private static class SuperUnitCursor {
+
+		private final CharSequence sentence;
+
+		private final int length;
+
+		// the current super-unit and its offsets
+		int index = -1;
+
+		int begin = 0;
+
+		int end = 0;
+
+		private String superUnit;
+
+		SuperUnitCursor(CharSequence sentence, int length) {
+			this.sentence = sentence;
+			this.length = length;
+		}
+
+		/**
+		 * moves to the i-th super-unit
+		 */
+		void advance(int i) {
+			while (index < i) {
+				begin = end;
+				while (begin < length && isWhiteSpace(sentence.charAt(begin)))
+					begin++;
+				end = begin;
+				while (end < length && !isWhiteSpace(sentence.charAt(end)))
+					end++;
+				superUnit = null;
+				index++;
+			}
+		}
+
+		String get(int i) {
+			advance(i);
+			if (superUnit == null)
+				superUnit = sentence.subSequence(begin, end).toString();
+			return superUnit;
+		}
 	}
 
 }
@@ -0,0 +1,134 @@
+/**
+ * SentenceStream.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * The predicted units of a stream of sentences, see
+ * Tokenizer.predictStream(). The sentences are read and predicted window by
+ * window (with Tokenizer.predictAll()), so only the sentences of the
+ * current window and their units are held in memory however long the
+ * stream is.
+ **/
+
+package de.julielab.jtbd;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+class SentenceStream implements Iterator<UnitBuffer> {
+
+	private final Tokenizer tokenizer;
+
+	private final Iterator<? extends CharSequence> sentences;
+
+	private final int windowSize;
+
+	private final ArrayList<CharSequence> window;
+
+	// the units of the sentences of the window, null if handed out
+	private UnitBuffer[] units;
+
+	// the next sentence of the window to be handed out
+	private int next = 0;
+
+	/**
+	 * @param sentences
+	 *            the sentences, read as they are needed
+	 * @param windowSize
+	 *            the number of sentences predicted at once
+	 */
+	SentenceStream(Tokenizer tokenizer,
+			Iterator<? extends CharSequence> sentences, int windowSize) {
+		if (windowSize <= 0)
+			throw new IllegalArgumentException(
+					"window size must be positive, got " + windowSize);
+		this.tokenizer = tokenizer;
+		this.sentences = sentences;
+		this.windowSize = windowSize;
+		window = new ArrayList<CharSequence>(windowSize);
+		units = new UnitBuffer[windowSize];
+	}
+
+	public boolean hasNext() {
+		if (next < window.size())
+			return true;
+		// predicts the next window
+		window.clear();
+		while (window.size() < windowSize && sentences.hasNext())
+			window.add(sentences.next());
+		// the buffers handed out before may still be used
+		units = new UnitBuffer[windowSize];
+		next = 0;
+		if (window.isEmpty())
+			return false;
+		tokenizer.predictAll(window, units, null);
+		return true;
+	}
+
+	/**
+	 * @return the units of the next sentence and their predicted labels, the
+	 *         sentence is the text of the units
+	 */
+	public UnitBuffer next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		UnitBuffer sentenceUnits = units[next];
+		units[next++] = null;
+		return sentenceUnits;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * The lines of a reader without line terminators, read as they are
+	 * needed. The reader is not closed.
+	 */
+	static class Lines implements Iterator<String> {
+
+		private final BufferedReader reader;
+
+		// the next line, null at the end
+		private String line;
+
+		private boolean read = false;
+
+		Lines(BufferedReader reader) {
+			this.reader = reader;
+		}
+
+		public boolean hasNext() {
+			if (!read) {
+				try {
+					line = reader.readLine();
+				} catch (IOException e) {
+					throw new IllegalStateException("could not read line", e);
+				}
+				read = true;
+			}
+			return line != null;
+		}
+
+		public String next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			read = false;
+			return line;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -13,26 +13,57 @@
  * Creation date: Aug 01, 2006 
  * 
  * This class holds a list of symbols where the tokenizer
- * checks for possible token boundaries. 
+ * checks for possible token boundaries. The symbols are single
+ * characters which are looked up in a char-indexed table; instances
+ * are immutable, getInstance() returns the shared default one.
  * 
  **/
 
 package de.julielab.jtbd;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 
 class TokenBoundarySymbols {
 
-	Set<String> tbSymbols;
+	private static final TokenBoundarySymbols INSTANCE = new TokenBoundarySymbols();
+
+	private final Set<String> tbSymbols;
+
+	// the single character symbols, indexed by character
+	private final boolean[] lookup;
 
 	public TokenBoundarySymbols() {
-		init();
+		this(defaultSymbols());
+	}
+
+	/**
+	 * @param symbols
+	 *            the token boundary symbols, e.g. those stored with a model
+	 */
+	TokenBoundarySymbols(Set<String> symbols) {
+		tbSymbols = Collections.unmodifiableSet(new HashSet<String>(symbols));
+		char max = 0;
+		for (String symbol : tbSymbols)
+			if (symbol.length() == 1 && symbol.charAt(0) > max)
+				max = symbol.charAt(0);
+		lookup = new boolean[max + 1];
+		for (String symbol : tbSymbols)
+			if (symbol.length() == 1)
+				lookup[symbol.charAt(0)] = true;
+	}
+
+	/**
+	 * @return the shared instance with the default symbols
+	 */
+	static TokenBoundarySymbols getInstance() {
+		return INSTANCE;
 	}
 
-	private void init() {
-		tbSymbols = new HashSet<String>();
+	private static Set<String> defaultSymbols() {
+		Set<String> tbSymbols = new HashSet<String>();
 		
 		
 		tbSymbols.add("-");
@@ -65,8 +96,22 @@ class TokenBoundarySymbols {
 		tbSymbols.add("]");
 		tbSymbols.add("{");
 		tbSymbols.add("}");
+		return tbSymbols;
+	}
+
+	public boolean contains(char c) {
+		return c < lookup.length && lookup[c];
+	}
+
+	public boolean contains(String symbol) {
+		if (symbol.length() == 1)
+			return contains(symbol.charAt(0));
+		return tbSymbols.contains(symbol);
 	}
 
+	/**
+	 * @return the symbols, cannot be modified
+	 */
 	public Set<String> getSymbols() {
 		return tbSymbols;
 	}
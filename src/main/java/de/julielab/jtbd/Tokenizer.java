@@ -15,10 +15,19 @@
  * The main class for the JULIE Token Boundary Detector. This class has all 
  * the function for training and prediction etc.
  * The following labels are used: 
+ *
+ * Once a model is trained, read or set and configured, a single Tokenizer
+ * may be used by several threads for prediction: the model is not changed
+ * by prediction, and everything that is per sentence (units, scores,
+ * lattices) is made per call or lives in the UnitBuffers of the caller. The
+ * caches are thread-safe. A UnitBuffer or an Instance must not be used by
+ * several threads at once. Training, reading or setting a model and the
+ * setters must not run concurrently with prediction.
  **/
 
 package de.julielab.jtbd;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -26,9 +35,24 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.Reader;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -39,8 +63,8 @@ import cc.mallet.fst.CRF;
 import cc.mallet.fst.CRFTrainerByLabelLikelihood;
 import cc.mallet.pipe.Pipe;
 import cc.mallet.pipe.SerialPipes;
-import cc.mallet.pipe.TokenSequence2FeatureVectorSequence;
-import cc.mallet.pipe.tsf.OffsetConjunctions;
+import cc.mallet.types.FeatureVector;
+import cc.mallet.types.FeatureVectorSequence;
 import cc.mallet.types.Instance;
 import cc.mallet.types.InstanceList;
 import cc.mallet.types.LabelAlphabet;
@@ -54,10 +78,55 @@ public class Tokenizer implements Serializable {
 	private static final Logger LOGGER = LoggerFactory
 			.getLogger(Tokenizer.class);
 
+	// sentences read and predicted at once by predictStream(Reader)
+	static final int STREAM_WINDOW_SIZE = 1024;
+
+	// see setChunkSize()
+	static final int DEFAULT_CHUNK_SIZE = 4096;
+
 	CRF model = null;
 
+	// a model for prediction only, used instead of the CRF, see
+	// writeQuantizedModel()
+	QuantizedModel quantizedModel = null;
+
 	boolean trained = false;
 
+	// bits of the feature weights used for prediction, see setWeightBits()
+	private int weightBits = Decoder.DOUBLE_BITS;
+
+	// fix the labels of units followed by white space, see
+	// setConstrainedDecoding()
+	private boolean constrainedDecoding = true;
+
+	// units of a long text decoded at once, see setChunkSize()
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	// units of a sentence predicted at once, 0 for any, see
+	// setMaxSentenceUnits()
+	private int maxSentenceUnits = 0;
+
+	// sentences split because of maxSentenceUnits, not kept when the
+	// tokenizer is serialized, see readObject()
+	private transient AtomicLong splitSentences = new AtomicLong();
+
+	// looks up the feature indices of the model directly, see
+	// getPredictionPipe()
+	private transient volatile Pipe predictionPipe = null;
+
+	// decodes with the flattened weights of the model instead of
+	// CRF.transduce(), see Decoder
+	private transient volatile Decoder decoder = null;
+
+	// transition scores of the units by their context, null if disabled
+	private transient volatile BoundedCache<UnitContext, double[]> scoreCache = null;
+
+	// labels of the units of super-units by their context, null if disabled
+	private transient volatile BoundedCache<UnitContext, byte[]> superUnitCache = null;
+
+	// known tokens whose labels are pinned before decoding, null if none
+	private transient volatile Lexicon lexicon = null;
+
 	public Tokenizer() {
 		LOGGER.debug("this is the JTBD constuctor");
 		model = null;
@@ -75,6 +144,44 @@ public class Tokenizer implements Serializable {
 	 */
 	public InstanceList makeTrainingData(ArrayList<String> orgSentences,
 			ArrayList<String> tokSentences) {
+		return makeTrainingData(orgSentences, tokSentences, null);
+	}
+
+	/**
+	 * make material for training from given data without some of the
+	 * feature templates, the choice is stored with the model
+	 * 
+	 * @param orgSentences
+	 *            original sentence
+	 * @param tokSentences
+	 *            a tokenized sentence
+	 * @param disabledTemplates
+	 *            names of the feature templates not to use (see
+	 *            FeatureTemplates), may be null
+	 * @return
+	 */
+	public InstanceList makeTrainingData(ArrayList<String> orgSentences,
+			ArrayList<String> tokSentences, Set<String> disabledTemplates) {
+		return makeTrainingData(orgSentences, tokSentences, disabledTemplates,
+				0);
+	}
+
+	/**
+	 * make material for training from given data, optionally with hashed
+	 * features
+	 * 
+	 * @param disabledTemplates
+	 *            names of the feature templates not to use (see
+	 *            FeatureTemplates), may be null
+	 * @param featureHashBits
+	 *            if positive, the features are hashed to 2^featureHashBits
+	 *            indices (see HashedAlphabet) instead of being stored in an
+	 *            alphabet
+	 * @return
+	 */
+	public InstanceList makeTrainingData(ArrayList<String> orgSentences,
+			ArrayList<String> tokSentences, Set<String> disabledTemplates,
+			int featureHashBits) {
 
 		LOGGER.debug("makeTrainingData() - making training data...");
 
@@ -82,10 +189,14 @@ public class Tokenizer implements Serializable {
 		dict.lookupLabel("P", true); // unit is a token boundary
 		dict.lookupLabel("N", true); // unit is not a token boundary
 
-		Pipe myPipe = new SerialPipes(new Pipe[] { new Sentence2TokenPipe(),
-				new OffsetConjunctions(new int[][] { { -1 }, { 1 } }),
-				// new PrintTokenSequenceFeatures(),
-				new TokenSequence2FeatureVectorSequence(true, true) });
+		Sentence2TokenPipe featurePipe = new Sentence2TokenPipe();
+		featurePipe.setDisabledTemplates(disabledTemplates);
+		// the features of the neighbors are added as OffsetConjunctions({-1},
+		// {1}) does
+		NeighborConjunctions conjunctions = featureHashBits > 0 ? new NeighborConjunctions(
+				new HashedAlphabet(featureHashBits))
+				: new NeighborConjunctions();
+		Pipe myPipe = new SerialPipes(new Pipe[] { featurePipe, conjunctions });
 		InstanceList instList = new InstanceList(myPipe);
 
 		System.out.print("preparing training data...");
@@ -98,9 +209,9 @@ public class Tokenizer implements Serializable {
 					.trim());
 
 			// remove last character of orgSentence if this is an EOS-symbol
-			EOSSymbols E = new EOSSymbols();
+			EOSSymbols E = EOSSymbols.getInstance();
 
-			Character lastChar = tokSentence.charAt(tokSentence.length() - 1);
+			char lastChar = tokSentence.charAt(tokSentence.length() - 1);
 			if (E.contains(lastChar))
 				tokSentence.deleteCharAt(tokSentence.length() - 1);
 
@@ -131,25 +242,14 @@ public class Tokenizer implements Serializable {
 	public Instance makePredictionData(StringBuffer orgSentence,
 			StringBuffer tokSentence) {
 		// remove last character of orgSentence if this is an EOS-symbol
-		EOSSymbols E = new EOSSymbols();
-
-		Character lastChar = null;
-		if (tokSentence.length() > 0) {
-			lastChar = tokSentence.charAt(tokSentence.length() - 1);
-			if (E.contains(lastChar))
-				tokSentence.deleteCharAt(tokSentence.length() - 1);
-		}
+		removeEOSSymbol(tokSentence);
+		removeEOSSymbol(orgSentence);
 
-		if (orgSentence.length() > 0) {
-			lastChar = orgSentence.charAt(orgSentence.length() - 1);
-			if (E.contains(lastChar))
-				orgSentence.deleteCharAt(orgSentence.length() - 1);
-		}
 		Instance inst = null;
 		// Logging level 'Trace' is used that is unknown to log4j versions older
 		// than 1.2.12.
 		try {
-			inst = model.getInputPipe().instanceFrom(
+			inst = getPredictionPipe().instanceFrom(
 					new Instance(orgSentence.toString(), null, null,
 							tokSentence.toString()));
 		} catch (NoSuchMethodError e) {
@@ -159,6 +259,16 @@ public class Tokenizer implements Serializable {
 		return inst;
 	}
 
+	/**
+	 * removes the last character of a sentence if this is an EOS-symbol
+	 */
+	private void removeEOSSymbol(StringBuffer sentence) {
+		if (sentence.length() > 0
+				&& EOSSymbols.getInstance().contains(
+						sentence.charAt(sentence.length() - 1)))
+			sentence.deleteCharAt(sentence.length() - 1);
+	}
+
 	/**
 	 * make material for prediction from a collection of sentences
 	 */
@@ -167,7 +277,7 @@ public class Tokenizer implements Serializable {
 
 		LOGGER.debug("makePredictionData() - making prediction data");
 
-		InstanceList predictData = new InstanceList(model.getInputPipe());
+		InstanceList predictData = new InstanceList(getInputPipe());
 		for (int i = 0; i < orgSentences.size(); i++) {
 			StringBuffer orgSentence = new StringBuffer(orgSentences.get(i));
 			StringBuffer tokSentence = new StringBuffer(tokSentences.get(i));
@@ -193,6 +303,7 @@ public class Tokenizer implements Serializable {
 
 		// set up model
 		model = new CRF(myPipe, null);
+		quantizedModel = null;
 		model.addStatesForLabelsConnectedAsIn(instList);
 
 		// get trainer
@@ -208,6 +319,7 @@ public class Tokenizer implements Serializable {
 		// stop growth and set trained
 		model.getInputPipe().getDataAlphabet().stopGrowth();
 		trained = true;
+		modelChanged();
 
 		LOGGER.debug("train() - training time: " + (s2 - s1) / 1000 + " sec");
 	}
@@ -221,11 +333,16 @@ public class Tokenizer implements Serializable {
 	 */
 	public List<Unit> predict(String sentence) {
 		LOGGER.debug("predict() - before pedicting labelss ...");
-		if (trained == false || model == null) {
+		if (trained == false || model == null && quantizedModel == null) {
 			throw new IllegalStateException(
 					"No model available. Train or load trained model first.");
 		}
 		LOGGER.debug("predict() - now making pedictions ...");
+		if (getPredictionPipe() instanceof Sentence2FeatureVectorPipe) {
+			UnitBuffer units = new UnitBuffer();
+			predict(sentence, units);
+			return units.toUnits();
+		}
 		Instance inst = makePredictionData(new StringBuffer(sentence),
 				new StringBuffer(""));
 		LOGGER.debug("predict() - after pedicting labels ...");
@@ -236,12 +353,13 @@ public class Tokenizer implements Serializable {
 	 * do the prediction
 	 * 
 	 * @param an
-	 *            instance for prediction
+	 *            instance for prediction, the labels are set in the units of
+	 *            its name, so it must not be used by other threads meanwhile
 	 * @return an ArrayList of Unit objects containing the predicted label
 	 */
 	public List<Unit> predict(Instance inst) {
 
-		if (trained == false || model == null) {
+		if (trained == false || model == null && quantizedModel == null) {
 			throw new IllegalStateException(
 					"No model available. Train or load trained model first.");
 		}
@@ -251,6 +369,20 @@ public class Tokenizer implements Serializable {
 			// get sequence
 			Sequence input = (Sequence) inst.getData();
 
+			if (input instanceof FeatureVectorSequence) {
+				// decode on the flattened weights, same output as transduce
+				Decoder decoder = getDecoder();
+				double[][] scores = new double[input.size()][];
+				for (int j = 0; j < input.size(); j++)
+					scores[j] = decoder.score((FeatureVector) input.get(j));
+				decoder.decode(scores, getBoundaries(inst), units);
+				return units;
+			}
+
+			if (model == null)
+				throw new IllegalStateException(
+						"a quantized model can only decode feature vector sequences");
+
 			// transduce and generate output
 			Sequence crfOutput = model.transduce(input);
 			for (int j = 0; j < crfOutput.size(); j++) {
@@ -260,6 +392,962 @@ public class Tokenizer implements Serializable {
 		return units;
 	}
 
+	/**
+	 * do the prediction without making Unit objects
+	 * 
+	 * @param sentence
+	 *            the original sentence, a final EOS symbol is not part of
+	 *            the units
+	 * @param units
+	 *            the buffer which gets the units of the sentence and their
+	 *            predicted labels, may be reused for several sentences
+	 */
+	public void predict(CharSequence sentence, UnitBuffer units) {
+		if (trained == false || model == null && quantizedModel == null) {
+			throw new IllegalStateException(
+					"No model available. Train or load trained model first.");
+		}
+		if (!(getPredictionPipe() instanceof Sentence2FeatureVectorPipe)) {
+			// the model has an unknown input pipe, the units are made by it
+			int length = withoutEOSSymbol(sentence);
+			units.reset(sentence);
+			for (Unit unit : predict(sentence.toString())) {
+				int superUnit = units.addSuperUnit(-1, -1, unit.superUnitRep);
+				units.add(unit.begin, unit.end, superUnit, unit.end < length
+						&& Sentence2TokenPipe.isWhiteSpace(sentence
+								.charAt(unit.end)));
+				units.setLabel(units.size() - 1, UnitBuffer
+						.getLabel(unit.label));
+			}
+			return;
+		}
+
+		Sentence2FeatureVectorPipe pipe = (Sentence2FeatureVectorPipe) getPredictionPipe();
+		int length = withoutEOSSymbol(sentence);
+		pipe.getFeaturePipe().makeUnits(sentence, length, units);
+		if (isTooLong(units))
+			predictInParts(pipe, sentence, length, units);
+		else
+			decode(pipe, units, getBoundaries(units));
+	}
+
+	/**
+	 * predicts the labels of the units of a sentence, in chunks if they are
+	 * many (see setChunkSize())
+	 * 
+	 * @param boundaries
+	 *            the units whose label is fixed, see getBoundaries()
+	 */
+	private void decode(Sentence2FeatureVectorPipe pipe, UnitBuffer units,
+			boolean[] boundaries) {
+		if (isLong(units, boundaries))
+			decodeChunks(pipe, units, boundaries);
+		else if (superUnitCache != null && boundaries != null)
+			decodeSuperUnits(pipe, units, boundaries);
+		else
+			getDecoder().decode(score(pipe, units, boundaries, null),
+					boundaries, units);
+	}
+
+	/**
+	 * do the prediction for several sentences at once, which decodes
+	 * sentences of similar length together (see Decoder)
+	 * 
+	 * @param sentences
+	 *            the original sentences, a final EOS symbol is not part of
+	 *            the units
+	 * @param units
+	 *            the buffers which get the units of the sentences and their
+	 *            predicted labels, one per sentence and in the same order. A
+	 *            null entry is replaced by a new buffer.
+	 */
+	public void predict(List<? extends CharSequence> sentences,
+			UnitBuffer[] units) {
+		int[] order = prepareBatch(sentences, units);
+		for (int from = 0; from < order.length; from += Decoder.BATCH_SIZE)
+			predictBatch(sentences, order, from, Math.min(order.length, from
+					+ Decoder.BATCH_SIZE), units);
+	}
+
+	/**
+	 * do the prediction for several sentences in parallel, with the threads
+	 * of the tokenizer (see predictAll(List, UnitBuffer[], Executor))
+	 * 
+	 * @param sentences
+	 *            the original sentences, a final EOS symbol is not part of
+	 *            the units
+	 * @return the units of the sentences with their predicted labels, in the
+	 *         same order as the sentences
+	 */
+	public UnitBuffer[] predictAll(List<? extends CharSequence> sentences) {
+		return predictAll(sentences, null);
+	}
+
+	/**
+	 * do the prediction for several sentences in parallel (see
+	 * predictAll(List, UnitBuffer[], Executor))
+	 * 
+	 * @param sentences
+	 *            the original sentences, a final EOS symbol is not part of
+	 *            the units
+	 * @param executor
+	 *            runs the prediction, null for the threads of the tokenizer
+	 * @return the units of the sentences with their predicted labels, in the
+	 *         same order as the sentences
+	 */
+	public UnitBuffer[] predictAll(List<? extends CharSequence> sentences,
+			Executor executor) {
+		UnitBuffer[] units = new UnitBuffer[sentences.size()];
+		predictAll(sentences, units, executor);
+		return units;
+	}
+
+	/**
+	 * Does the prediction for several sentences in parallel, with the same
+	 * labels as predict(List, UnitBuffer[]). The sentences are ordered by
+	 * decreasing length and taken batch by batch by the tasks, so the long
+	 * sentences are done first and the short ones fill up the tasks which
+	 * are done early. The calling thread takes batches, too, so the
+	 * prediction makes progress even if the executor is busy or rejects the
+	 * tasks.
+	 * 
+	 * @param sentences
+	 *            the original sentences, a final EOS symbol is not part of
+	 *            the units
+	 * @param units
+	 *            the buffers which get the units of the sentences and their
+	 *            predicted labels, one per sentence and in the same order. A
+	 *            null entry is replaced by a new buffer.
+	 * @param executor
+	 *            runs the prediction besides the calling thread, e.g. a
+	 *            thread pool; null for the threads of the tokenizer, one per
+	 *            processor and shared by all tokenizers
+	 */
+	public void predictAll(final List<? extends CharSequence> sentences,
+			final UnitBuffer[] units, Executor executor) {
+		final int[] order = prepareBatch(sentences, units);
+		final int n = order.length;
+		// the first sentence in order which is not yet taken
+		final AtomicInteger next = new AtomicInteger();
+		Runnable worker = new Runnable() {
+			public void run() {
+				boolean done = false;
+				try {
+					int from = next.getAndAdd(Decoder.BATCH_SIZE);
+					while (from < n) {
+						predictBatch(sentences, order, from, Math.min(n, from
+								+ Decoder.BATCH_SIZE), units);
+						from = next.getAndAdd(Decoder.BATCH_SIZE);
+					}
+					done = true;
+				} finally {
+					// the other tasks stop after their batch
+					if (!done)
+						next.set(n);
+				}
+			}
+		};
+
+		runParallel(worker, (n + Decoder.BATCH_SIZE - 1) / Decoder.BATCH_SIZE,
+				executor, next, n);
+	}
+
+	/**
+	 * Does the prediction for the sentences of a text and writes the offsets
+	 * of their tokens into a buffer, without making a String or a UnitBuffer
+	 * per sentence. A unit labeled P ends a token, a unit labeled N is
+	 * continued by the next one; the last unit of a sentence always ends a
+	 * token, and a final EOS symbol is a token of its own. The sentences are
+	 * predicted in parallel, with the threads of the tokenizer (see
+	 * predictAll()).
+	 * 
+	 * @param text
+	 *            the text of the sentences
+	 * @param sentences
+	 *            the begin and end offsets of the sentences in the text, the
+	 *            k-th sentence from sentences[2 * k] to sentences[2 * k + 1]
+	 * @param nrSentences
+	 *            the number of sentences in sentences
+	 * @param tokens
+	 *            gets the begin and end offsets of the tokens in the text in
+	 *            the same way, sentence by sentence. It must have room for
+	 *            twice the total length of the sentences, the upper bound of
+	 *            the number of offsets.
+	 * @return the number of tokens
+	 */
+	public int predictTokens(final CharSequence text, final int[] sentences,
+			final int nrSentences, final int[] tokens) {
+		if (trained == false || model == null && quantizedModel == null) {
+			throw new IllegalStateException(
+					"No model available. Train or load trained model first.");
+		}
+		if (2 * nrSentences > sentences.length)
+			throw new IllegalArgumentException("got " + sentences.length
+					+ " offsets for " + nrSentences + " sentences");
+		// the sentences are taken in chunks of a batch, each chunk writes its
+		// tokens into its own part of the buffer, which is as large as the
+		// upper bound of its offsets
+		final int nrChunks = (nrSentences + Decoder.BATCH_SIZE - 1)
+				/ Decoder.BATCH_SIZE;
+		final int[] starts = new int[nrChunks + 1];
+		final int[] ends = new int[nrChunks];
+		for (int k = 0; k < nrSentences; k++) {
+			int begin = sentences[2 * k];
+			int end = sentences[2 * k + 1];
+			if (begin < 0 || end < begin || end > text.length())
+				throw new IllegalArgumentException("sentence " + k
+						+ " from " + begin + " to " + end
+						+ " is not within the text of length "
+						+ text.length());
+			starts[k / Decoder.BATCH_SIZE + 1] += 2 * (end - begin);
+		}
+		for (int c = 0; c < nrChunks; c++)
+			starts[c + 1] += starts[c];
+		if (tokens.length < starts[nrChunks])
+			throw new IllegalArgumentException("got room for "
+					+ tokens.length + " token offsets, need "
+					+ starts[nrChunks]);
+
+		// the next chunk which is not yet taken
+		final AtomicInteger next = new AtomicInteger();
+		Runnable worker = new Runnable() {
+			public void run() {
+				boolean done = false;
+				try {
+					TextSpan[] spans = new TextSpan[Decoder.BATCH_SIZE];
+					UnitBuffer[] units = new UnitBuffer[Decoder.BATCH_SIZE];
+					int[] order = new int[Decoder.BATCH_SIZE];
+					for (int b = 0; b < Decoder.BATCH_SIZE; b++) {
+						spans[b] = new TextSpan(text);
+						units[b] = new UnitBuffer();
+						order[b] = b;
+					}
+					List<TextSpan> batch = Arrays.asList(spans);
+					Pipe pipe = getPredictionPipe();
+					int c = next.getAndIncrement();
+					while (c < nrChunks) {
+						int from = c * Decoder.BATCH_SIZE;
+						int size = Math.min(nrSentences - from,
+								Decoder.BATCH_SIZE);
+						for (int b = 0; b < size; b++) {
+							spans[b].set(sentences[2 * (from + b)],
+									sentences[2 * (from + b) + 1]);
+							makeUnits(pipe, spans[b], units[b]);
+						}
+						predictBatch(batch, order, 0, size, units);
+						int t = starts[c];
+						for (int b = 0; b < size; b++)
+							t = addTokens(spans[b], units[b], tokens, t);
+						ends[c] = t;
+						c = next.getAndIncrement();
+					}
+					done = true;
+				} finally {
+					// the other tasks stop after their chunk
+					if (!done)
+						next.set(nrChunks);
+				}
+			}
+		};
+		runParallel(worker, nrChunks, null, next, nrChunks);
+
+		// closes the gaps between the parts of the chunks
+		int t = 0;
+		for (int c = 0; c < nrChunks; c++) {
+			System.arraycopy(tokens, starts[c], tokens, t, ends[c] - starts[c]);
+			t += ends[c] - starts[c];
+		}
+		return t / 2;
+	}
+
+	/**
+	 * writes the offsets of the tokens of a predicted sentence, see
+	 * predictTokens()
+	 * 
+	 * @param t
+	 *            the index in tokens of the first offset to write
+	 * @return the index in tokens after the written offsets
+	 */
+	private static int addTokens(TextSpan sentence, UnitBuffer units,
+			int[] tokens, int t) {
+		int begin = -1;
+		for (int i = 0; i < units.size(); i++) {
+			if (begin < 0)
+				begin = units.getBegin(i);
+			byte label = units.getLabel(i);
+			if (label != UnitBuffer.LABEL_P && label != UnitBuffer.LABEL_N)
+				throw new IllegalStateException("unit "
+						+ units.getUnitRep(i) + " has label "
+						+ UnitBuffer.getLabelName(label)
+						+ ", only P and N are known");
+			if (label == UnitBuffer.LABEL_P || i == units.size() - 1) {
+				tokens[t++] = sentence.offset + begin;
+				tokens[t++] = sentence.offset + units.getEnd(i);
+				begin = -1;
+			}
+		}
+		int length = sentence.length();
+		if (length > 0
+				&& EOSSymbols.getInstance().contains(
+						sentence.charAt(length - 1))) {
+			tokens[t++] = sentence.offset + length - 1;
+			tokens[t++] = sentence.offset + length;
+		}
+		return t;
+	}
+
+	/**
+	 * A part of a text as a sentence, so that the text is not copied. It is
+	 * moved from sentence to sentence.
+	 */
+	private static class TextSpan implements CharSequence {
+
+		private final CharSequence text;
+
+		private int offset;
+
+		private int length;
+
+		TextSpan(CharSequence text) {
+			this.text = text;
+		}
+
+		void set(int begin, int end) {
+			offset = begin;
+			length = end - begin;
+		}
+
+		public int length() {
+			return length;
+		}
+
+		public char charAt(int index) {
+			return text.charAt(offset + index);
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return text.subSequence(offset + start, offset + end);
+		}
+
+		@Override
+		public String toString() {
+			return text.subSequence(offset, offset + length).toString();
+		}
+	}
+
+	/**
+	 * Runs a worker in the calling thread and in tasks of an executor, one
+	 * per processor at most, and waits for all of them. The worker takes
+	 * its work with an atomic counter; it sets the counter to the end if it
+	 * fails, so that the other tasks stop early. The first failure is
+	 * thrown.
+	 * 
+	 * @param nrBatches
+	 *            the number of pieces of work, no more tasks are started
+	 * @param executor
+	 *            runs the tasks, null for the threads of the tokenizer
+	 * @param next
+	 *            the counter of the worker, set to end if the calling thread
+	 *            is interrupted
+	 */
+	private static void runParallel(Runnable worker, int nrBatches,
+			Executor executor, AtomicInteger next, int end) {
+		if (executor == null)
+			executor = SharedExecutor.INSTANCE;
+		int nrTasks = Math.min(nrBatches, Runtime.getRuntime()
+				.availableProcessors());
+		ArrayList<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>();
+		for (int t = 1; t < nrTasks; t++) {
+			FutureTask<Object> task = new FutureTask<Object>(worker, null);
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				break;
+			}
+			tasks.add(task);
+		}
+
+		Throwable failure = null;
+		try {
+			worker.run();
+		} catch (Throwable e) {
+			failure = e;
+		}
+		// the buffers must not be written after returning, so all tasks are
+		// waited for. All work is taken at this point, so a task which has
+		// not started yet is cancelled; it may wait for a thread of a pool
+		// whose threads wait themselves.
+		boolean interrupted = false;
+		for (FutureTask<Object> task : tasks) {
+			if (task.cancel(false))
+				continue;
+			while (true) {
+				try {
+					task.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+					next.set(end);
+				} catch (ExecutionException e) {
+					if (failure == null)
+						failure = e.getCause();
+					break;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		if (failure != null)
+			throw new IllegalStateException(failure);
+		if (interrupted)
+			throw new IllegalStateException("interrupted while predicting");
+	}
+
+	/**
+	 * The threads used by predictAll() if no executor is given: daemon
+	 * threads, one per processor, made on first use.
+	 */
+	private static class SharedExecutor {
+		static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "jtbd-predict-"
+								+ count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Does the prediction for a stream of sentences, e.g. a corpus which
+	 * does not fit into memory. The sentences are read and predicted in
+	 * windows of some sentences (see predictAll()) as the units are asked
+	 * for, so only one window is held in memory.
+	 * 
+	 * @param sentences
+	 *            the original sentences, a final EOS symbol is not part of
+	 *            the units
+	 * @param windowSize
+	 *            the number of sentences read and predicted at once
+	 * @return the units of the sentences with their predicted labels, in the
+	 *         same order as the sentences; the sentence is the text of the
+	 *         units
+	 */
+	public Iterator<UnitBuffer> predictStream(
+			Iterator<? extends CharSequence> sentences, int windowSize) {
+		if (trained == false || model == null && quantizedModel == null) {
+			throw new IllegalStateException(
+					"No model available. Train or load trained model first.");
+		}
+		return new SentenceStream(this, sentences, windowSize);
+	}
+
+	/**
+	 * does the prediction for a text with one sentence per line, see
+	 * predictStream(Iterator, int)
+	 * 
+	 * @param reader
+	 *            the text, it is read as the units are asked for and not
+	 *            closed
+	 * @return the units of the lines with their predicted labels, also for
+	 *         empty lines
+	 */
+	public Iterator<UnitBuffer> predictStream(Reader reader) {
+		BufferedReader lines;
+		if (reader instanceof BufferedReader)
+			lines = (BufferedReader) reader;
+		else
+			lines = new BufferedReader(reader);
+		return predictStream(new SentenceStream.Lines(lines),
+				STREAM_WINDOW_SIZE);
+	}
+
+	/**
+	 * does the prediction for a text with one sentence per line, see
+	 * predictStream(Reader)
+	 * 
+	 * @param channel
+	 *            the text, it is read as the units are asked for and not
+	 *            closed
+	 * @param charsetName
+	 *            the encoding of the text
+	 */
+	public Iterator<UnitBuffer> predictStream(ReadableByteChannel channel,
+			String charsetName) {
+		return predictStream(Channels.newReader(channel, charsetName));
+	}
+
+	/**
+	 * checks the arguments of a prediction of several sentences, fills up
+	 * the buffers and makes the units of the sentences, which are then
+	 * ordered by their number of units. With a prediction pipe other than a
+	 * Sentence2FeatureVectorPipe, the sentences are predicted one by one, so
+	 * no units are made and the order is that of the sentences.
+	 * 
+	 * @return the indices of the sentences by decreasing length
+	 */
+	private int[] prepareBatch(List<? extends CharSequence> sentences,
+			UnitBuffer[] units) {
+		if (trained == false || model == null && quantizedModel == null) {
+			throw new IllegalStateException(
+					"No model available. Train or load trained model first.");
+		}
+		if (units.length < sentences.size())
+			throw new IllegalArgumentException("got " + units.length
+					+ " unit buffers for " + sentences.size() + " sentences");
+		Pipe pipe = getPredictionPipe();
+		int[] lengths = new int[sentences.size()];
+		for (int k = 0; k < sentences.size(); k++) {
+			if (units[k] == null)
+				units[k] = new UnitBuffer();
+			lengths[k] = makeUnits(pipe, sentences.get(k), units[k]);
+		}
+		return Decoder.byDecreasingLength(lengths);
+	}
+
+	/**
+	 * makes the units of a sentence to be predicted by predictBatch() if the
+	 * prediction pipe is a Sentence2FeatureVectorPipe
+	 * 
+	 * @return the number of units, 0 for other pipes
+	 */
+	private int makeUnits(Pipe pipe, CharSequence sentence, UnitBuffer units) {
+		if (!(pipe instanceof Sentence2FeatureVectorPipe))
+			return 0;
+		((Sentence2FeatureVectorPipe) pipe).getFeaturePipe().makeUnits(
+				sentence, withoutEOSSymbol(sentence), units);
+		return units.size();
+	}
+
+	/**
+	 * predicts the labels of some sentences of similar length together, whose
+	 * units are already made (see makeUnits()). The sentences are scored and decoded
+	 * batch by batch, so that the scores of a batch are still cached when it
+	 * is decoded.
+	 * 
+	 * @param order
+	 *            the indices of the sentences by decreasing length
+	 * @param from
+	 *            the first index in order of the batch
+	 * @param to
+	 *            the index in order after the batch
+	 */
+	private void predictBatch(List<? extends CharSequence> sentences,
+			int[] order, int from, int to, UnitBuffer[] units) {
+		if (!(getPredictionPipe() instanceof Sentence2FeatureVectorPipe)) {
+			for (int b = from; b < to; b++)
+				predict(sentences.get(order[b]), units[order[b]]);
+			return;
+		}
+
+		Sentence2FeatureVectorPipe pipe = (Sentence2FeatureVectorPipe) getPredictionPipe();
+		Decoder decoder = getDecoder();
+		boolean bySuperUnits = superUnitCache != null && constrainedDecoding
+				&& decoder.canFixBoundaries();
+		int size = to - from;
+		// the sentences decoded together, long ones are decoded alone
+		double[][][] scores = new double[size][][];
+		boolean[][] boundaries = new boolean[size][];
+		UnitBuffer[] batch = new UnitBuffer[size];
+		int batchSize = 0;
+		for (int b = from; b < to; b++) {
+			CharSequence sentence = sentences.get(order[b]);
+			UnitBuffer sentenceUnits = units[order[b]];
+			if (isTooLong(sentenceUnits)) {
+				predictInParts(pipe, sentence, withoutEOSSymbol(sentence),
+						sentenceUnits);
+				continue;
+			}
+			boolean[] sentenceBoundaries = getBoundaries(sentenceUnits);
+			if (isLong(sentenceUnits, sentenceBoundaries)) {
+				decodeChunks(pipe, sentenceUnits, sentenceBoundaries);
+			} else if (bySuperUnits) {
+				decodeSuperUnits(pipe, sentenceUnits, sentenceBoundaries);
+			} else {
+				scores[batchSize] = score(pipe, sentenceUnits,
+						sentenceBoundaries, null);
+				boundaries[batchSize] = sentenceBoundaries;
+				batch[batchSize++] = sentenceUnits;
+			}
+		}
+		if (batchSize == 0)
+			return;
+		if (batchSize < size) {
+			scores = Arrays.copyOf(scores, batchSize);
+			boundaries = Arrays.copyOf(boundaries, batchSize);
+			batch = Arrays.copyOf(batch, batchSize);
+		}
+		decoder.decode(scores, boundaries[0] == null ? null : boundaries,
+				batch);
+	}
+
+	/**
+	 * @return whether a sentence has more units than it may have, see
+	 *         setMaxSentenceUnits()
+	 */
+	private boolean isTooLong(UnitBuffer units) {
+		return maxSentenceUnits > 0 && units.size() > maxSentenceUnits;
+	}
+
+	/**
+	 * Predicts a sentence with too many units as several sentences of at
+	 * most maxSentenceUnits units each. A part ends with the last unit
+	 * followed by white space if there is one, so that the white space
+	 * belongs to it; else it ends after maxSentenceUnits units, which ends
+	 * a token there. The units of the parts are made anew, so super-units
+	 * are cut at the end of a part, too.
+	 * 
+	 * @param length
+	 *            the length of the sentence without a final EOS symbol
+	 * @param units
+	 *            the units of the whole sentence, get the units of the parts
+	 *            with their predicted labels
+	 */
+	private void predictInParts(Sentence2FeatureVectorPipe pipe,
+			CharSequence sentence, int length, UnitBuffer units) {
+		splitSentences.incrementAndGet();
+		int n = units.size();
+		// the end offsets of the parts
+		int[] ends = new int[n];
+		int nrParts = 0;
+		for (int first = 0; first < n; nrParts++) {
+			int last = first + maxSentenceUnits - 1;
+			if (last >= n - 1) {
+				ends[nrParts] = length;
+				break;
+			}
+			int cut = last;
+			while (cut >= first && !units.hasRightWhiteSpace(cut))
+				cut--;
+			if (cut >= first) {
+				ends[nrParts] = units.getBegin(cut + 1);
+				first = cut + 1;
+			} else {
+				ends[nrParts] = units.getEnd(last);
+				first = last + 1;
+			}
+		}
+		nrParts++;
+
+		units.reset(sentence);
+		TextSpan part = new TextSpan(sentence);
+		UnitBuffer partUnits = new UnitBuffer();
+		for (int k = 0; k < nrParts; k++) {
+			part.set(k == 0 ? 0 : ends[k - 1], ends[k]);
+			pipe.getFeaturePipe().makeUnits(part, part.length(), partUnits);
+			decode(pipe, partUnits, getBoundaries(partUnits));
+			if (k < nrParts - 1)
+				partUnits.setLabel(partUnits.size() - 1, UnitBuffer.LABEL_P);
+			units.append(partUnits, part.offset);
+		}
+	}
+
+	/**
+	 * @return whether the units are decoded chunk by chunk, see
+	 *         setChunkSize()
+	 */
+	private boolean isLong(UnitBuffer units, boolean[] boundaries) {
+		return boundaries != null && chunkSize > 0
+				&& units.size() > chunkSize;
+	}
+
+	/**
+	 * Decodes a long text in chunks of units, which are scored and decoded
+	 * in parallel with the threads of the tokenizer. A chunk ends with a
+	 * boundary or the last unit, so the labels are the same as if the text
+	 * was decoded at once: the features of the units next to a chunk are
+	 * made from the whole text, and decoding starts over at each boundary
+	 * (see Decoder).
+	 * 
+	 * @param boundaries
+	 *            the units whose label is fixed, see getBoundaries()
+	 */
+	private void decodeChunks(final Sentence2FeatureVectorPipe pipe,
+			final UnitBuffer units, final boolean[] boundaries) {
+		int n = units.size();
+		// the last unit of each chunk, all chunks but the last have at least
+		// chunkSize units
+		final int[] lasts = new int[(n + chunkSize - 1) / chunkSize];
+		int nrChunks = 0;
+		for (int last = -1; last < n - 1; nrChunks++) {
+			last = Math.min(last + chunkSize, n - 1);
+			while (last < n - 1 && !boundaries[last])
+				last++;
+			lasts[nrChunks] = last;
+		}
+
+		// the texts of the super-units and their hashes are made on demand,
+		// they are made before so that the tasks only read the units
+		for (int i = 0; i < n; i++) {
+			units.getSuperUnitRep(i);
+			units.getSuperUnitHash(i);
+		}
+
+		final boolean bySuperUnits = superUnitCache != null;
+		final Decoder decoder = getDecoder();
+		final double[][] scores = new double[n][];
+		final int end = nrChunks;
+		// the next chunk which is not yet taken
+		final AtomicInteger next = new AtomicInteger();
+		Runnable worker = new Runnable() {
+			public void run() {
+				boolean done = false;
+				try {
+					int c = next.getAndIncrement();
+					while (c < end) {
+						int first = c == 0 ? 0 : lasts[c - 1] + 1;
+						if (bySuperUnits) {
+							decodeSuperUnits(pipe, units, first, lasts[c],
+									boundaries, scores);
+						} else {
+							score(pipe, units, first, lasts[c], boundaries,
+									null, scores);
+							decoder.decode(scores, first, lasts[c],
+									boundaries, units);
+						}
+						c = next.getAndIncrement();
+					}
+					done = true;
+				} finally {
+					// the other tasks stop after their chunk
+					if (!done)
+						next.set(end);
+				}
+			}
+		};
+		runParallel(worker, nrChunks, null, next, nrChunks);
+	}
+
+	/**
+	 * @return the length of a sentence without a final EOS symbol
+	 */
+	private int withoutEOSSymbol(CharSequence sentence) {
+		int length = sentence.length();
+		if (length > 0
+				&& EOSSymbols.getInstance().contains(
+						sentence.charAt(length - 1)))
+			length--;
+		return length;
+	}
+
+	/**
+	 * A unit followed by white space always ends a token. With constrained
+	 * decoding, its label is fixed to P (see Decoder), which splits the
+	 * sentence into independent parts. The label of the last unit of a
+	 * sentence is decoded: it is N in the training data (see
+	 * Sentence2TokenPipe.makeLabels()), so fixing it would change the labels
+	 * before it.
+	 * 
+	 * With a lexicon, the labels of the units of the known tokens in the
+	 * sentence are pinned, too (see Lexicon.pin()): they are set in the
+	 * buffer, which marks them as known to score(), and the units before
+	 * the tokens are boundaries.
+	 * 
+	 * @return the units whose label is P, null if no label is fixed
+	 */
+	private boolean[] getBoundaries(UnitBuffer units) {
+		Decoder decoder = getDecoder();
+		if (!constrainedDecoding || !decoder.canFixBoundaries())
+			return null;
+		int n = units.size();
+		boolean[] boundaries = new boolean[n];
+		for (int i = 0; i < n; i++)
+			boundaries[i] = units.hasRightWhiteSpace(i);
+		Lexicon lexicon = this.lexicon;
+		if (lexicon != null && decoder.hasLabel(UnitBuffer.LABEL_N))
+			lexicon.pin(units, boundaries);
+		return boundaries;
+	}
+
+	/**
+	 * getBoundaries() for an instance made by the input pipe of the model,
+	 * its source are the white space infos ("WS" or "noWS") of the units
+	 */
+	private boolean[] getBoundaries(Instance inst) {
+		if (!constrainedDecoding || !getDecoder().canFixBoundaries()
+				|| !(inst.getSource() instanceof List))
+			return null;
+		List<?> wSpaces = (List<?>) inst.getSource();
+		int n = wSpaces.size();
+		boolean[] boundaries = new boolean[n];
+		for (int i = 0; i < n; i++)
+			boundaries[i] = "WS".equals(wSpaces.get(i));
+		return boundaries;
+	}
+
+	/**
+	 * computes the transition scores of the units of a buffer. If the score
+	 * cache is used, the transition scores of units whose context was seen
+	 * before are taken from the cache and features are only made for the
+	 * units (and their neighbors) whose context is not in the cache.
+	 * 
+	 * The label of a boundary after a boundary is fixed by the labels
+	 * around it, so its scores are not needed and are left null; nor are
+	 * its features unless a neighbor needs them. A unit whose label is
+	 * already set is pinned (see getBoundaries()), its scores only allow
+	 * that label.
+	 * 
+	 * @param pipe
+	 *            the prediction pipe of the model
+	 * @param boundaries
+	 *            the units whose label is fixed, may be null
+	 * @param needed
+	 *            the units whose scores are needed, null for all
+	 * @return the transition scores of each unit, see Decoder.score()
+	 */
+	private double[][] score(Sentence2FeatureVectorPipe pipe,
+			UnitBuffer units, boolean[] boundaries, boolean[] needed) {
+		double[][] scores = new double[units.size()][];
+		score(pipe, units, 0, units.size() - 1, boundaries, needed, scores);
+		return scores;
+	}
+
+	/**
+	 * computes the transition scores of the units from to to (see
+	 * score(Sentence2FeatureVectorPipe, UnitBuffer, boolean[], boolean[])),
+	 * the features of the units next to them are made, too
+	 * 
+	 * @param needed
+	 *            the units whose scores are needed by their index minus
+	 *            from, null for all
+	 * @param scores
+	 *            gets the transition scores of the units, by their index
+	 */
+	private void score(Sentence2FeatureVectorPipe pipe, UnitBuffer units,
+			int from, int to, boolean[] boundaries, boolean[] needed,
+			double[][] scores) {
+		BoundedCache<UnitContext, double[]> cache = scoreCache;
+		UnitContext context = cache == null ? null : new UnitContext();
+		Decoder decoder = getDecoder();
+		int n = units.size();
+		// the features of the units from from - 1 to to + 1
+		ArrayList<ArrayList<int[]>> unitFeatures = new ArrayList<ArrayList<int[]>>(
+				to - from + 3);
+		for (int j = from - 1; j <= to + 1; j++)
+			unitFeatures.add(null);
+		Sentence2TokenPipe.SuperUnitFeatures superUnit = new Sentence2TokenPipe.SuperUnitFeatures();
+		// the scores of the units whose label is pinned, by their label
+		double[][] fixedScores = new double[3][];
+
+		for (int i = from; i <= to; i++) {
+			if (needed != null && !needed[i - from] || boundaries != null
+					&& i > 0 && boundaries[i] && boundaries[i - 1])
+				continue;
+			byte label = units.getLabel(i);
+			if (label != UnitBuffer.LABEL_O) {
+				if (fixedScores[label] == null)
+					fixedScores[label] = decoder.getFixedScores(label);
+				scores[i] = fixedScores[label];
+				continue;
+			}
+			if (cache != null) {
+				scores[i] = cache.get(context.set(units, i, i));
+				if (scores[i] != null)
+					continue;
+			}
+			// make the features of the unit and its neighbors
+			for (int j = Math.max(0, i - 1); j <= i + 1 && j < n; j++)
+				if (unitFeatures.get(j - from + 1) == null)
+					unitFeatures.set(j - from + 1, pipe.unitFeatures(units, j,
+							superUnit));
+			scores[i] = decoder.score(pipe.featureVector(
+					i > 0 ? unitFeatures.get(i - from) : null, unitFeatures
+							.get(i - from + 1), i + 1 < n ? unitFeatures.get(i
+							- from + 2) : null));
+			if (cache != null)
+				cache.put(context.copy(), scores[i]);
+		}
+	}
+
+	/**
+	 * Decodes a sentence super-unit by super-unit, using the super-unit
+	 * cache. With constrained decoding, the units after a boundary up to the
+	 * next one (or the last unit) are those of a super-unit and their labels
+	 * only depend on the units of the super-unit and the units next to it
+	 * (see UnitContext). The labels of
+	 * super-units seen in the same context before are taken from the cache,
+	 * only the other super-units are scored and decoded.
+	 * 
+	 * @param pipe
+	 *            the prediction pipe of the model
+	 * @param boundaries
+	 *            the units whose label is fixed, see getBoundaries()
+	 */
+	private void decodeSuperUnits(Sentence2FeatureVectorPipe pipe,
+			UnitBuffer units, boolean[] boundaries) {
+		decodeSuperUnits(pipe, units, 0, units.size() - 1, boundaries, null);
+	}
+
+	/**
+	 * decodes the super-units of the units from first to last, see
+	 * decodeSuperUnits(Sentence2FeatureVectorPipe, UnitBuffer, boolean[])
+	 * 
+	 * @param last
+	 *            a boundary or the last unit
+	 * @param scores
+	 *            gets the transition scores of the units which are scored,
+	 *            by their index; null to make it if needed
+	 */
+	private void decodeSuperUnits(Sentence2FeatureVectorPipe pipe,
+			UnitBuffer units, int first, int last, boolean[] boundaries,
+			double[][] scores) {
+		BoundedCache<UnitContext, byte[]> cache = superUnitCache;
+		UnitContext context = new UnitContext();
+		// the first and last units of the super-units not in the cache, all
+		// but the last one have two units or more
+		int[] missed = new int[last - first + 2];
+		ArrayList<UnitContext> contexts = new ArrayList<UnitContext>();
+		boolean[] needed = new boolean[last - first + 1];
+
+		for (int from = first, to; from <= last; from = to + 1) {
+			to = from;
+			while (to < last && !boundaries[to])
+				to++;
+			if (from == to && boundaries[to]) {
+				// a single unit, its label is fixed
+				units.setLabel(from, UnitBuffer.LABEL_P);
+				continue;
+			}
+			if (units.getLabel(from) != UnitBuffer.LABEL_O)
+				// the units of a known token, see getBoundaries()
+				continue;
+			byte[] labels = cache.get(context.set(units, from, to));
+			if (labels != null) {
+				for (int i = from; i <= to; i++)
+					units.setLabel(i, labels[i - from]);
+				continue;
+			}
+			missed[2 * contexts.size()] = from;
+			missed[2 * contexts.size() + 1] = to;
+			contexts.add(context.copy());
+			Arrays.fill(needed, from - first, to - first + 1, true);
+		}
+		if (contexts.isEmpty())
+			return;
+
+		if (scores == null)
+			scores = new double[units.size()][];
+		score(pipe, units, first, last, boundaries, needed, scores);
+		Decoder decoder = getDecoder();
+		for (int k = 0; k < contexts.size(); k++) {
+			int from = missed[2 * k];
+			int to = missed[2 * k + 1];
+			decoder.decode(scores, from, to, boundaries, units);
+			byte[] labels = new byte[to - from + 1];
+			for (int i = from; i <= to; i++)
+				labels[i - from] = units.getLabel(i);
+			cache.put(contexts.get(k), labels);
+		}
+	}
+
 	/**
 	 * retrieve the labels from a LabelSequence
 	 * 
@@ -337,11 +1425,328 @@ public class Tokenizer implements Serializable {
 		FileInputStream fis = new FileInputStream(new File(filename));
 		GZIPInputStream gin = new GZIPInputStream(fis);
 		ObjectInputStream ois = new ObjectInputStream(gin);
-		model = (CRF) ois.readObject();
+		Object object = ois.readObject();
+		if (object instanceof QuantizedModel) {
+			model = null;
+			quantizedModel = (QuantizedModel) object;
+		} else {
+			model = (CRF) object;
+			quantizedModel = null;
+		}
 		trained = true;
-		model.getInputPipe().getDataAlphabet().stopGrowth();
+		getInputPipe().getDataAlphabet().stopGrowth();
+		modelChanged();
 	}
 
+	/**
+	 * Save the model for prediction only, with feature weights of less
+	 * precision: the file has the input pipe of the model and its flattened
+	 * weights (see Decoder) instead of the CRF. It is read by readModel()
+	 * and predicts as the model with weights of that precision (see
+	 * setWeightBits()). The model must have hashed features (see
+	 * makeTrainingData()), so the input pipe keeps no feature names and the
+	 * file and the model read from it are about as large as the weights
+	 * (see getWeightsSize()).
+	 * 
+	 * @param filename
+	 *            where to save the model, ".gz" is appended
+	 * @param weightBits
+	 *            32 for float weights or 8 for byte weights with a scale per
+	 *            block of weights, must be less than the bits of the weights
+	 *            of the model
+	 * @throws IllegalStateException
+	 *             if there is no model or its features are not hashed
+	 */
+	public void writeQuantizedModel(String filename, int weightBits)
+			throws IOException {
+		if (trained == false || model == null && quantizedModel == null) {
+			throw new IllegalStateException(
+					"train or load trained model first.");
+		}
+		if (!hasHashedFeatures()) {
+			throw new IllegalStateException(
+					"only models with hashed features can be quantized.");
+		}
+		Decoder full = model != null ? new Decoder(model) : quantizedModel
+				.getDecoder();
+		QuantizedModel quantized = new QuantizedModel(getInputPipe(), full
+				.quantize(weightBits));
+		ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(
+				new FileOutputStream(new File(filename + ".gz"))));
+		try {
+			oos.writeObject(quantized);
+		} finally {
+			oos.close();
+		}
+	}
+
+	/**
+	 * @return true if the features of the model are hashed (see
+	 *         HashedAlphabet), false if there is no model
+	 */
+	boolean hasHashedFeatures() {
+		return (model != null || quantizedModel != null)
+				&& getInputPipe().getDataAlphabet() instanceof HashedAlphabet;
+	}
+
+	/**
+	 * @return the input pipe of the CRF or of the quantized model
+	 */
+	private Pipe getInputPipe() {
+		return model != null ? model.getInputPipe() : quantizedModel
+				.getInputPipe();
+	}
+
+	/**
+	 * The pipe used to make the prediction data. For models trained with
+	 * makeTrainingData() this is a Sentence2FeatureVectorPipe which yields
+	 * the same feature vectors as the input pipe of the model without
+	 * building the feature names of the neighbor conjunctions. For other
+	 * models, the input pipe of the model is used.
+	 */
+	Pipe getPredictionPipe() {
+		// threads may make the pipe at the same time, either one is used
+		Pipe pipe = predictionPipe;
+		if (pipe == null) {
+			pipe = Sentence2FeatureVectorPipe.forInputPipe(getInputPipe());
+			if (pipe == null)
+				pipe = getInputPipe();
+			predictionPipe = pipe;
+		}
+		return pipe;
+	}
+
+	private Decoder getDecoder() {
+		// as getPredictionPipe()
+		Decoder d = decoder;
+		if (d == null) {
+			Decoder full = model != null ? new Decoder(model) : quantizedModel
+					.getDecoder();
+			d = weightBits < full.getWeightBits() ? full.quantize(weightBits)
+					: full;
+			decoder = d;
+		}
+		return d;
+	}
+
+	/**
+	 * makes the counter of the split sentences anew, a deserialized
+	 * tokenizer has not split any sentence yet
+	 */
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		splitSentences = new AtomicLong();
+	}
+
+	/**
+	 * drops everything derived from the previous model
+	 */
+	private void modelChanged() {
+		predictionPipe = null;
+		decoder = null;
+		if (scoreCache != null)
+			scoreCache.clear();
+		if (superUnitCache != null)
+			superUnitCache.clear();
+	}
+
+	/**
+	 * Enables caching of the transition scores of units by their context
+	 * (see predict(String)). As the same units in the same context recur
+	 * over and over again, this saves most of the feature extraction. The
+	 * least recently used entries are evicted if the cache is full.
+	 * 
+	 * @param size
+	 *            maximal number of cached contexts, 0 disables the cache
+	 */
+	public void setScoreCacheSize(int size) {
+		if (size < 0)
+			throw new IllegalArgumentException(
+					"cache size must not be negative, got " + size);
+		scoreCache = size == 0 ? null
+				: new BoundedCache<UnitContext, double[]>(size);
+	}
+
+	/**
+	 * @return the score cache with its statistics or null if caching is
+	 *         disabled
+	 */
+	public BoundedCache<?, double[]> getScoreCache() {
+		return scoreCache;
+	}
+
+	/**
+	 * Enables caching of the labels of the units of super-units by their
+	 * context, i.e. the super-unit and the units next to it. Frequent
+	 * super-units like "T-cell" or "IL-2" are then labeled by a lookup
+	 * instead of scoring and decoding. The cache is only used with
+	 * constrained decoding (see setConstrainedDecoding()), the labels are the
+	 * same as without it. The least recently used entries are evicted if the
+	 * cache is full.
+	 * 
+	 * @param size
+	 *            maximal number of cached contexts, 0 disables the cache
+	 */
+	public void setSuperUnitCacheSize(int size) {
+		if (size < 0)
+			throw new IllegalArgumentException(
+					"cache size must not be negative, got " + size);
+		superUnitCache = size == 0 ? null
+				: new BoundedCache<UnitContext, byte[]>(size);
+	}
+
+	/**
+	 * @return the super-unit cache with its statistics or null if caching is
+	 *         disabled
+	 */
+	public BoundedCache<?, byte[]> getSuperUnitCache() {
+		return superUnitCache;
+	}
+
+	/**
+	 * Sets the precision of the feature weights used for prediction. With
+	 * less precision, the weights take 2 (float) or about 8 (byte) times less
+	 * memory, the predictions may differ slightly from those of the model.
+	 * Only the weights used for prediction are quantized, the CRF is kept
+	 * as it is, so that a CRF read from a file then takes more memory, not
+	 * less; to save memory, a quantized model is written and read instead.
+	 * A model read from a quantized file (see writeQuantizedModel()) is never
+	 * more precise than it was written.
+	 * 
+	 * @param weightBits
+	 *            64 for the weights of the model, 32 for float weights or 8
+	 *            for byte weights with a scale per block of weights
+	 */
+	public void setWeightBits(int weightBits) {
+		if (weightBits != Decoder.DOUBLE_BITS
+				&& weightBits != Decoder.FLOAT_BITS
+				&& weightBits != Decoder.BYTE_BITS)
+			throw new IllegalArgumentException("weights have "
+					+ Decoder.DOUBLE_BITS + ", " + Decoder.FLOAT_BITS + " or "
+					+ Decoder.BYTE_BITS + " bits, got " + weightBits);
+		this.weightBits = weightBits;
+		modelChanged();
+	}
+
+	public int getWeightBits() {
+		return weightBits;
+	}
+
+	/**
+	 * Decoding is constrained by default: units followed by white space
+	 * always end a token, so their labels are fixed and only the labels of
+	 * the other units are decoded. The labels are those of unconstrained
+	 * decoding unless it labels such a unit N. Only the
+	 * transition scores of the units whose label is not fixed by those of
+	 * their neighbors are computed. Without constraints, all labels are
+	 * decoded as by CRF.transduce(). Models without a state for the label P
+	 * are never constrained.
+	 */
+	public void setConstrainedDecoding(boolean constrainedDecoding) {
+		this.constrainedDecoding = constrainedDecoding;
+	}
+
+	public boolean isConstrainedDecoding() {
+		return constrainedDecoding;
+	}
+
+	/**
+	 * A text with more units than the chunk size, e.g. a whole document, is
+	 * scored and decoded in chunks of about this number of units in
+	 * parallel. The chunks end with units followed by white space, so the
+	 * labels are the same as if the text was decoded at once. This needs
+	 * constrained decoding (see setConstrainedDecoding()), else long texts
+	 * are decoded at once.
+	 * 
+	 * @param chunkSize
+	 *            the minimal number of units of a chunk, 0 to decode any
+	 *            text at once
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 0)
+			throw new IllegalArgumentException(
+					"chunk size must not be negative, got " + chunkSize);
+		this.chunkSize = chunkSize;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Sets a lexicon of known tokens, e.g. curated gene names, which are
+	 * found in a sentence before it is decoded. The labels of their units
+	 * are pinned, so that they are tokens, and the CRF only scores and
+	 * decodes the other units. The lexicon is only used with constrained
+	 * decoding (see setConstrainedDecoding()).
+	 * 
+	 * @param lexicon
+	 *            the known tokens, null for none
+	 */
+	public void setLexicon(Lexicon lexicon) {
+		this.lexicon = lexicon;
+		// the cached labels of super-units next to known tokens change
+		BoundedCache<UnitContext, byte[]> cache = superUnitCache;
+		if (cache != null)
+			cache.clear();
+	}
+
+	/**
+	 * @return the lexicon with its statistics or null if there is none
+	 */
+	public Lexicon getLexicon() {
+		return lexicon;
+	}
+
+	/**
+	 * Sets a budget for the prediction of a sentence. Inputs like DNA
+	 * sequences, chemical names or flattened tables make sentences of
+	 * thousands of units, which take much time and memory, also because
+	 * of their long super-units. A sentence with more units is predicted
+	 * as several parts of at most this number of units, split at white
+	 * space where possible and else within a super-unit, which always ends
+	 * a token there. The labels of such a sentence are not those predicted
+	 * for it as a whole, so the budget should be far above the units of
+	 * ordinary sentences. Only sentences whose units are made by the
+	 * tokenizer are split (see getPredictionPipe()).
+	 * 
+	 * @param maxUnits
+	 *            the maximal number of units predicted at once, 0 for no
+	 *            limit (the default)
+	 */
+	public void setMaxSentenceUnits(int maxUnits) {
+		if (maxUnits < 0)
+			throw new IllegalArgumentException(
+					"maximal number of units must not be negative, got "
+							+ maxUnits);
+		maxSentenceUnits = maxUnits;
+	}
+
+	public int getMaxSentenceUnits() {
+		return maxSentenceUnits;
+	}
+
+	/**
+	 * @return the number of sentences which were split because they had
+	 *         more units than the budget, see setMaxSentenceUnits()
+	 */
+	public long getSplitSentenceCount() {
+		return splitSentences.get();
+	}
+
+	/**
+	 * @return the number of bytes of the feature weights used for prediction,
+	 *         without the CRF, the feature alphabet and the feature names of
+	 *         the prediction pipe
+	 */
+	long getWeightsSize() {
+		return getDecoder().getWeightsSize();
+	}
+
+	/**
+	 * @return the CRF, null if a quantized model was read
+	 */
 	public CRF getModel() {
 		return model;
 	}
@@ -349,6 +1754,10 @@ public class Tokenizer implements Serializable {
 	public void setModel(CRF crf) {
 		trained = true;
 		this.model = crf;
+		quantizedModel = null;
+		// prediction must not add features to the model
+		crf.getInputPipe().getDataAlphabet().stopGrowth();
+		modelChanged();
 	}
 
 	public boolean isTrained() {
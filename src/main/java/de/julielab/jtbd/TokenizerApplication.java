@@ -29,12 +29,22 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import cc.mallet.fst.CRF;
 import cc.mallet.pipe.Pipe;
@@ -72,6 +82,15 @@ public class TokenizerApplication {
 		} else if (mode.equals("e")) { // compare validation mode
 			startCompareValidationMode(args);
 
+		} else if (mode.equals("b")) { // feature extraction benchmark
+			startBenchmarkMode(args);
+
+		} else if (mode.equals("a")) { // feature template ablation
+			startAblationMode(args);
+
+		} else if (mode.equals("q")) { // quantize model weights
+			startQuantizationMode(args);
+
 		} else { // unknown mode
 			System.err.println("unknown mode");
 			showModes();
@@ -86,19 +105,18 @@ public class TokenizerApplication {
 	 *            the command line arguments
 	 */
 	private static void startCompareValidationMode(String[] args) {
-		if (args.length != 6) {
+		if (args.length != 6 && args.length != 7) {
 			System.err
-					.println("usage: JTBD e <modelFile> <sent-file> <tok-file> <predout-file> <errout-file>");
+					.println("usage: JTBD e <modelFile> <sent-file> <tok-file> <predout-file> <errout-file> [<weight-bits>]");
+			System.err.println("weight bits are comma-separated (32 or 8), "
+					+ "each is evaluated against the weights of the model");
 			System.exit(-1);
 		}
 
-		ObjectInputStream in;
-		CRF crf = null;
+		Tokenizer tokenizer = new Tokenizer();
 		try {
 			// load model
-			in = new ObjectInputStream(new GZIPInputStream(new FileInputStream(args[1])));
-			crf = (CRF) in.readObject();
-			in.close();
+			tokenizer.readModel(args[1]);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -112,10 +130,50 @@ public class TokenizerApplication {
 
 		ArrayList<String> errors = new ArrayList<String>();
 		ArrayList<String> predictions = new ArrayList<String>();
-		doEvaluation(crf, orgSentences, tokSentences, predictions, errors);
+		EvalResult er = doEvaluation(tokenizer, orgSentences, tokSentences,
+				predictions, errors);
 
 		writeFile(predictions, predOutFile);
 		writeFile(errors, errOutFile);
+
+		if (args.length == 7) {
+			String[] bits = args[6].split(",");
+			int[] weightBits = new int[bits.length];
+			for (int i = 0; i < bits.length; i++)
+				weightBits[i] = (new Integer(bits[i])).intValue();
+			doQuantizationEvaluation(tokenizer, args[1], er, orgSentences,
+					tokSentences, weightBits);
+		}
+	}
+
+	/**
+	 * Entry point for quantization mode
+	 * 
+	 * @param args
+	 *            the command line arguments
+	 */
+	private static void startQuantizationMode(String[] args) {
+		if (args.length != 4) {
+			System.err
+					.println("usage: JTBD q <model-file> <out-file> <weight-bits>");
+			System.err.println("weight bits are 32 (float) or 8 (byte with a "
+					+ "scale per block), the model must have hashed features "
+					+ "(see mode t)");
+			System.exit(-1);
+		}
+
+		Tokenizer tokenizer = new Tokenizer();
+		try {
+			tokenizer.readModel(args[1]);
+			tokenizer.writeQuantizedModel(args[2], (new Integer(args[3]))
+					.intValue());
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+		System.out.println("Quantized model written to: " + args[2] + ".gz ("
+				+ new File(args[2] + ".gz").length() + " bytes, the model has "
+				+ new File(args[1]).length() + " bytes)");
 	}
 
 	/**
@@ -156,17 +214,31 @@ public class TokenizerApplication {
 	 *            the command line arguments
 	 */
 	private static void startTrainingMode(String[] args) {
-		if (args.length != 4) {
+		if (args.length < 4 || args.length > 6) {
 			System.err
-					.println("usage: JTBD t <sent-file> <tok-file> <model-file>");
+					.println("usage: JTBD t <sent-file> <tok-file> <model-file> [<disabled-templates>] [<hash-bits>]");
+			System.err.println("disabled templates are comma-separated, from "
+					+ FeatureTemplates.getNames());
+			System.err.println("with hash bits, the features are hashed to "
+					+ "2^<hash-bits> indices");
 			System.exit(-1);
 		}
 
 		File orgSentencesFile = new File(args[1]);
 		File tokSentencesFile = new File(args[2]);
 		String modelFilename = args[3];
+		Set<String> disabledTemplates = null;
+		int featureHashBits = 0;
+		for (int i = 4; i < args.length; i++) {
+			if (args[i].matches("[0-9]+"))
+				featureHashBits = (new Integer(args[i])).intValue();
+			else
+				disabledTemplates = new HashSet<String>(Arrays.asList(args[i]
+						.split(",")));
+		}
 
-		doTraining(orgSentencesFile, tokSentencesFile, modelFilename);
+		doTraining(orgSentencesFile, tokSentencesFile, modelFilename,
+				disabledTemplates, featureHashBits);
 	}
 
 	/**
@@ -176,9 +248,11 @@ public class TokenizerApplication {
 	 *            the command line arguments
 	 */
 	private static void startXValidationMode(String[] args) {
-		if (args.length != 6) {
+		if (args.length != 6 && args.length != 7) {
 			System.err
-					.println("usage: JTBD x <sent-file> <tok-file> <cross-val-rounds> <predout-file> <errout-file>");
+					.println("usage: JTBD x <sent-file> <tok-file> <cross-val-rounds> <predout-file> <errout-file> [<hash-bits>]");
+			System.err.println("hash bits are comma-separated, each is "
+					+ "evaluated against the model without hashing");
 			System.exit(-1);
 		}
 		File orgSentencesFile = new File(args[1]);
@@ -190,8 +264,17 @@ public class TokenizerApplication {
 		ArrayList<String> errors = new ArrayList<String>();
 		ArrayList<String> predictions = new ArrayList<String>();
 
-		doCrossEvaluation(n, orgSentencesFile, tokSentencesFile, predictions,
-				errors);
+		if (args.length == 7) {
+			String[] bits = args[6].split(",");
+			int[] featureHashBits = new int[bits.length];
+			for (int i = 0; i < bits.length; i++)
+				featureHashBits[i] = (new Integer(bits[i])).intValue();
+			doHashingEvaluation(n, readFile(orgSentencesFile),
+					readFile(tokSentencesFile), featureHashBits, predictions,
+					errors);
+		} else
+			doCrossEvaluation(n, orgSentencesFile, tokSentencesFile,
+					predictions, errors);
 
 		writeFile(predictions, predOutFile);
 		writeFile(errors, errOutFile);
@@ -239,6 +322,48 @@ public class TokenizerApplication {
 		doCheck(orgSentencesFile, tokSentencesFile);
 	}
 
+	/**
+	 * Entry point for feature extraction benchmark mode
+	 * 
+	 * @param args
+	 *            the command line arguments
+	 */
+	private static void startBenchmarkMode(String[] args) {
+		if (args.length != 2 && args.length != 3) {
+			System.err.println("usage: JTBD b <sent-file> [<rounds>]");
+			System.exit(-1);
+		}
+		File orgSentencesFile = new File(args[1]);
+		int rounds = 10;
+		if (args.length == 3)
+			rounds = (new Integer(args[2])).intValue();
+		doFeatureBenchmark(readFile(orgSentencesFile), rounds);
+	}
+
+	/**
+	 * Entry point for feature template ablation mode
+	 * 
+	 * @param args
+	 *            the command line arguments
+	 */
+	private static void startAblationMode(String[] args) {
+		if (args.length != 4 && args.length != 5) {
+			System.err
+					.println("usage: JTBD a <sent-file> <tok-file> <cross-val-rounds> [<templates>]");
+			System.err.println("templates are comma-separated, from "
+					+ FeatureTemplates.getNames());
+			System.exit(-1);
+		}
+		File orgSentencesFile = new File(args[1]);
+		File tokSentencesFile = new File(args[2]);
+		int n = (new Integer(args[3])).intValue();
+		List<String> templates = FeatureTemplates.getNames();
+		if (args.length == 5)
+			templates = Arrays.asList(args[4].split(","));
+		doTemplateAblation(readFile(orgSentencesFile),
+				readFile(tokSentencesFile), n, templates);
+	}
+
 	/**
 	 * shows available modes
 	 */
@@ -250,9 +375,490 @@ public class TokenizerApplication {
 		System.err.println("t: train a tokenizer ");
 		System.err.println("p: predict with tokenizer ");
 		System.err.println("e: evaluation on previously trained model");
+		System.err.println("b: benchmark feature extraction");
+		System.err.println("a: profile and ablate feature templates");
+		System.err.println("q: write model with quantized weights");
 		System.exit(-1);
 	}
 
+	/**
+	 * Measures the time of the feature extraction on the given sentences.
+	 * The super-unit features are computed once per super-unit as in
+	 * Sentence2TokenPipe.pipe() and, for comparison, once per unit. The
+	 * segmentation into units is not part of the measurement.
+	 * 
+	 * @param orgSentences
+	 * @param rounds
+	 *            number of rounds of feature extraction on all sentences,
+	 *            an additional first round is used for warm-up
+	 */
+	public static void doFeatureBenchmark(ArrayList<String> orgSentences,
+			int rounds) {
+
+		Sentence2TokenPipe pipe = new Sentence2TokenPipe();
+
+		ArrayList<ArrayList<Unit>> units = new ArrayList<ArrayList<Unit>>();
+		ArrayList<ArrayList<String>> wSpaces = new ArrayList<ArrayList<String>>();
+		int nrUnits = 0;
+		int nrSuperUnits = 0;
+		for (String orgSentence : orgSentences) {
+			ArrayList<Unit> sentenceUnits = new ArrayList<Unit>();
+			ArrayList<String> sentenceWSpaces = new ArrayList<String>();
+			pipe.makeUnits(orgSentence.trim(), sentenceUnits, sentenceWSpaces);
+			units.add(sentenceUnits);
+			wSpaces.add(sentenceWSpaces);
+			nrUnits += sentenceUnits.size();
+			for (int j = 0; j < sentenceUnits.size(); j++)
+				if (j == 0
+						|| sentenceUnits.get(j).superUnitRep != sentenceUnits
+								.get(j - 1).superUnitRep)
+					nrSuperUnits++;
+		}
+
+		// just counts the features
+		final int[] nrFeatures = new int[1];
+		Sentence2TokenPipe.FeatureSink counter = new Sentence2TokenPipe.FeatureSink() {
+			public void add(String feature) {
+				nrFeatures[0]++;
+			}
+
+			public void add(String prefix, String value) {
+				nrFeatures[0]++;
+			}
+		};
+
+		long sharedTime = 0;
+		long perUnitTime = 0;
+		int sharedFeatures = 0;
+		int perUnitFeatures = 0;
+		for (int round = 0; round <= rounds; round++) {
+			nrFeatures[0] = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < units.size(); i++) {
+				Sentence2TokenPipe.SuperUnitFeatures superUnit = new Sentence2TokenPipe.SuperUnitFeatures();
+				for (int j = 0; j < units.get(i).size(); j++)
+					pipe.addFeatures(units.get(i).get(j), wSpaces.get(i)
+							.get(j), superUnit, counter);
+			}
+			long shared = System.nanoTime() - start;
+			sharedFeatures = nrFeatures[0];
+
+			nrFeatures[0] = 0;
+			start = System.nanoTime();
+			for (int i = 0; i < units.size(); i++) {
+				for (int j = 0; j < units.get(i).size(); j++)
+					pipe.addFeatures(units.get(i).get(j), wSpaces.get(i)
+							.get(j), new Sentence2TokenPipe.SuperUnitFeatures(),
+							counter);
+			}
+			long perUnit = System.nanoTime() - start;
+			perUnitFeatures = nrFeatures[0];
+
+			if (round > 0) {
+				sharedTime += shared;
+				perUnitTime += perUnit;
+			}
+		}
+
+		DecimalFormat df = new DecimalFormat("0.00");
+		System.out.println("\n* ------------------------------------");
+		System.out.println("* sentences: " + orgSentences.size());
+		System.out.println("* units: " + nrUnits);
+		System.out.println("* super-units: " + nrSuperUnits);
+		System.out.println("* features: " + sharedFeatures
+				+ (sharedFeatures == perUnitFeatures ? "" : " (per unit: "
+						+ perUnitFeatures + ")"));
+		System.out.println("* rounds: " + rounds);
+		System.out.println("* super-unit features per super-unit: "
+				+ df.format(sharedTime / 1000000.0 / rounds) + " ms/round");
+		System.out.println("* super-unit features per unit: "
+				+ df.format(perUnitTime / 1000000.0 / rounds) + " ms/round");
+		if (sharedTime > 0)
+			System.out.println("* speed-up: "
+					+ df.format((double) perUnitTime / sharedTime));
+		System.out.println("* ------------------------------------\n");
+	}
+
+	/**
+	 * Profiles and ablates feature templates. For each template, the CPU
+	 * time of the feature extraction saved by disabling it and the number of
+	 * features it contributes are measured. Templates sharing a scan over
+	 * the characters (see FeatureScanner) only save the scan when all of
+	 * them are disabled, so the scans are reported separately. If n > 1, a
+	 * cross validation is run with each template disabled to report the
+	 * loss in accuracy.
+	 * 
+	 * @param orgSentences
+	 * @param tokSentences
+	 * @param n
+	 *            number of cross validation splits, no cross validation if
+	 *            less than 2
+	 * @param templates
+	 *            the templates to ablate
+	 */
+	public static void doTemplateAblation(ArrayList<String> orgSentences,
+			ArrayList<String> tokSentences, int n, List<String> templates) {
+
+		Sentence2TokenPipe pipe = new Sentence2TokenPipe();
+		// check the names before the long computations
+		pipe.setDisabledTemplates(new HashSet<String>(templates));
+
+		ArrayList<ArrayList<Unit>> units = new ArrayList<ArrayList<Unit>>();
+		ArrayList<ArrayList<String>> wSpaces = new ArrayList<ArrayList<String>>();
+		int nrUnits = 0;
+		for (String orgSentence : orgSentences) {
+			ArrayList<Unit> sentenceUnits = new ArrayList<Unit>();
+			ArrayList<String> sentenceWSpaces = new ArrayList<String>();
+			pipe.makeUnits(orgSentence.trim(), sentenceUnits, sentenceWSpaces);
+			units.add(sentenceUnits);
+			wSpaces.add(sentenceWSpaces);
+			nrUnits += sentenceUnits.size();
+		}
+
+		// 1. profiling, for warm-up the extraction with all templates is done
+		// several times first, then it is measured again before each
+		// template to reduce the influence of the JIT compiler
+		long[] all = null;
+		for (int i = 0; i < 3; i++)
+			all = profileFeatureExtraction(pipe, null, units, wSpaces, 10);
+		// enough rounds for about 200 ms per measurement
+		int rounds = (int) Math.max(10, Math.min(100000,
+				200000000L * 10 / Math.max(1, all[0])));
+		all = profileFeatureExtraction(pipe, null, units, wSpaces, rounds);
+		long[][] profiles = new long[templates.size()][];
+		long allTime = 0;
+		for (int t = 0; t < templates.size(); t++) {
+			allTime += profileFeatureExtraction(pipe, null, units, wSpaces,
+					rounds)[0];
+			profiles[t] = profileFeatureExtraction(pipe, Collections
+					.singleton(templates.get(t)), units, wSpaces, rounds);
+		}
+		if (templates.size() > 0)
+			all[0] = allTime / templates.size();
+
+		// the scans are saved when all of their templates are disabled
+		Set<String> unitScan = new HashSet<String>();
+		Set<String> superUnitScan = new HashSet<String>();
+		for (String name : FeatureTemplates.getNames()) {
+			Set<String> template = Collections.singleton(name);
+			if (new FeatureTemplates(template).unitFlags != FeatureTemplates.ALL.unitFlags)
+				unitScan.add(name);
+			if (new FeatureTemplates(template).superUnitFlags != FeatureTemplates.ALL.superUnitFlags)
+				superUnitScan.add(name);
+		}
+		long[] withoutUnitScan = profileFeatureExtraction(pipe, unitScan,
+				units, wSpaces, rounds);
+		long[] withoutSuperUnitScan = profileFeatureExtraction(pipe,
+				superUnitScan, units, wSpaces, rounds);
+
+		DecimalFormat df = new DecimalFormat("0.000");
+		DecimalFormat pf = new DecimalFormat("0.0");
+		System.out.println("\n* ------------------------------------");
+		System.out.println("* units: " + nrUnits);
+		System.out.println("* rounds: " + rounds);
+		System.out.println("* CPU time of feature extraction: "
+				+ df.format(all[0] / 1000000.0 / rounds) + " ms/round");
+		System.out.println("* features per unit: "
+				+ df.format((double) all[1] / rounds / nrUnits));
+		System.out.println("* unit scan: "
+				+ df.format((all[0] - withoutUnitScan[0]) / 1000000.0 / rounds)
+				+ " ms/round");
+		System.out.println("* super-unit scan: "
+				+ df.format((all[0] - withoutSuperUnitScan[0]) / 1000000.0
+						/ rounds) + " ms/round");
+		System.out.println("* template\tsaved ms/round\tsaved %\tfeatures/unit");
+		for (int t = 0; t < templates.size(); t++) {
+			long saved = all[0] - profiles[t][0];
+			System.out.println("* " + templates.get(t) + "\t"
+					+ df.format(saved / 1000000.0 / rounds) + "\t"
+					+ pf.format(100.0 * saved / all[0]) + "\t"
+					+ df.format((double) (all[1] - profiles[t][1]) / rounds
+							/ nrUnits));
+		}
+		System.out.println("* ------------------------------------\n");
+
+		if (n < 2)
+			return;
+
+		// 2. ablation
+		ArrayList<String> errors = new ArrayList<String>();
+		ArrayList<String> predictions = new ArrayList<String>();
+		double baseline = doCrossEvaluation(n, orgSentences, tokSentences,
+				null, 0, errors, predictions).ACC;
+		double[] acc = new double[templates.size()];
+		for (int t = 0; t < templates.size(); t++)
+			acc[t] = doCrossEvaluation(n, orgSentences, tokSentences,
+					Collections.singleton(templates.get(t)), 0, errors,
+					predictions).ACC;
+
+		System.out.println("\n* ------------------------------------");
+		System.out.println("* avg accuracy with all templates: "
+				+ df.format(baseline));
+		System.out.println("* template\tavg accuracy\taccuracy loss\tspeed-up");
+		for (int t = 0; t < templates.size(); t++) {
+			System.out.println("* " + templates.get(t) + "\t"
+					+ df.format(acc[t]) + "\t" + df.format(baseline - acc[t])
+					+ "\t" + df.format((double) all[0] / profiles[t][0]));
+		}
+		System.out.println("* ------------------------------------\n");
+	}
+
+	/**
+	 * measures the CPU time of the feature extraction of the given units
+	 * 
+	 * @param disabledTemplates
+	 *            may be null
+	 * @return the CPU time in ns (wall clock time if CPU time is not
+	 *         supported) and the number of features, both summed over the
+	 *         rounds
+	 */
+	private static long[] profileFeatureExtraction(Sentence2TokenPipe pipe,
+			Set<String> disabledTemplates, ArrayList<ArrayList<Unit>> units,
+			ArrayList<ArrayList<String>> wSpaces, int rounds) {
+		pipe.setDisabledTemplates(disabledTemplates);
+
+		// just counts the features
+		final long[] nrFeatures = new long[1];
+		Sentence2TokenPipe.FeatureSink counter = new Sentence2TokenPipe.FeatureSink() {
+			public void add(String feature) {
+				nrFeatures[0]++;
+			}
+
+			public void add(String prefix, String value) {
+				nrFeatures[0]++;
+			}
+		};
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		boolean cpuTime = threads.isCurrentThreadCpuTimeSupported();
+		long time = 0;
+		// additional rounds for warm-up as the JIT compiler adapts to the
+		// templates
+		int warmUp = rounds / 4 + 1;
+		for (int round = -warmUp; round < rounds; round++) {
+			if (round == 0)
+				nrFeatures[0] = 0;
+			long start = cpuTime ? threads.getCurrentThreadCpuTime() : System
+					.nanoTime();
+			for (int i = 0; i < units.size(); i++) {
+				Sentence2TokenPipe.SuperUnitFeatures superUnit = new Sentence2TokenPipe.SuperUnitFeatures();
+				for (int j = 0; j < units.get(i).size(); j++)
+					pipe.addFeatures(units.get(i).get(j), wSpaces.get(i)
+							.get(j), superUnit, counter);
+			}
+			long end = cpuTime ? threads.getCurrentThreadCpuTime() : System
+					.nanoTime();
+			if (round >= 0)
+				time += end - start;
+		}
+		return new long[] { time, nrFeatures[0] };
+	}
+
+	/**
+	 * Compares the cross-validated accuracy and the model size of models with
+	 * hashed features to those of a model without hashing.
+	 * 
+	 * @param n
+	 *            number of splits
+	 * @param featureHashBits
+	 *            the numbers of hash bits to evaluate
+	 */
+	private static void doHashingEvaluation(int n,
+			ArrayList<String> orgSentences, ArrayList<String> tokSentences,
+			int[] featureHashBits, ArrayList<String> errors,
+			ArrayList<String> predictions) {
+		EvalResult baseline = doCrossEvaluation(n, orgSentences, tokSentences,
+				null, 0, errors, predictions);
+		EvalResult[] hashed = new EvalResult[featureHashBits.length];
+		for (int i = 0; i < featureHashBits.length; i++)
+			hashed[i] = doCrossEvaluation(n, orgSentences, tokSentences, null,
+					featureHashBits[i], new ArrayList<String>(),
+					new ArrayList<String>());
+
+		DecimalFormat df = new DecimalFormat("0.000");
+		System.out.println("\n* ------------------------------------");
+		System.out.println("* hash bits\tavg accuracy\taccuracy loss\tavg model size\tsize ratio");
+		System.out.println("* none\t" + df.format(baseline.ACC) + "\t"
+				+ df.format(0) + "\t" + baseline.modelSize + "\t"
+				+ df.format(1));
+		for (int i = 0; i < featureHashBits.length; i++) {
+			System.out.println("* "
+					+ featureHashBits[i]
+					+ "\t"
+					+ df.format(hashed[i].ACC)
+					+ "\t"
+					+ df.format(baseline.ACC - hashed[i].ACC)
+					+ "\t"
+					+ hashed[i].modelSize
+					+ "\t"
+					+ df.format((double) hashed[i].modelSize
+							/ Math.max(1, baseline.modelSize)));
+		}
+		System.out.println("* ------------------------------------\n");
+	}
+
+	/**
+	 * Compares the accuracy and the sizes of a model with quantized weights
+	 * to those of the model: the size of the feature weights, of the file
+	 * written by Tokenizer.writeQuantizedModel() (only for models with
+	 * hashed features) and of the heap used by a tokenizer which has read
+	 * the model and predicted a sentence.
+	 * 
+	 * @param tokenizer
+	 *            the tokenizer with the model
+	 * @param modelFilename
+	 *            the file of the model
+	 * @param baseline
+	 *            the evaluation of the model
+	 * @param weightBits
+	 *            the precisions of the weights to evaluate
+	 */
+	private static void doQuantizationEvaluation(Tokenizer tokenizer,
+			String modelFilename, EvalResult baseline,
+			ArrayList<String> orgSentences, ArrayList<String> tokSentences,
+			int[] weightBits) {
+		int modelBits = tokenizer.getWeightBits();
+		long baselineSize = tokenizer.getWeightsSize();
+		long baselineFileSize = new File(modelFilename).length();
+		// the first model read also loads the classes and fills the tables
+		// shared by all models, which are not counted
+		getHeapSize(modelFilename, modelBits);
+		long baselineHeapSize = getHeapSize(modelFilename, modelBits);
+		EvalResult[] quantized = new EvalResult[weightBits.length];
+		long[] sizes = new long[weightBits.length];
+		long[] fileSizes = new long[weightBits.length];
+		long[] heapSizes = new long[weightBits.length];
+		for (int i = 0; i < weightBits.length; i++) {
+			tokenizer.setWeightBits(weightBits[i]);
+			quantized[i] = doEvaluation(tokenizer, orgSentences, tokSentences,
+					new ArrayList<String>(), new ArrayList<String>());
+			sizes[i] = tokenizer.getWeightsSize();
+			fileSizes[i] = -1;
+			heapSizes[i] = -1;
+			if (tokenizer.hasHashedFeatures()) {
+				try {
+					File file = File.createTempFile("jtbd", ".mod");
+					tokenizer.writeQuantizedModel(file.getPath(),
+							weightBits[i]);
+					File gzFile = new File(file.getPath() + ".gz");
+					fileSizes[i] = gzFile.length();
+					heapSizes[i] = getHeapSize(gzFile.getPath(), weightBits[i]);
+					file.delete();
+					gzFile.delete();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			} else
+				heapSizes[i] = getHeapSize(modelFilename, weightBits[i]);
+		}
+		tokenizer.setWeightBits(modelBits);
+
+		DecimalFormat df = new DecimalFormat("0.00000");
+		System.out.println("\n* ------------------------------------");
+		System.out.println("* weight bits\taccuracy\taccuracy delta\tweights size\tfile size\theap size\theap ratio");
+		System.out.println("* model\t" + df.format(baseline.ACC) + "\t"
+				+ df.format(0) + "\t" + baselineSize + "\t"
+				+ baselineFileSize + "\t" + format(baselineHeapSize) + "\t"
+				+ df.format(1));
+		for (int i = 0; i < weightBits.length; i++) {
+			System.out.println("* "
+					+ weightBits[i]
+					+ "\t"
+					+ df.format(quantized[i].ACC)
+					+ "\t"
+					+ df.format(quantized[i].ACC - baseline.ACC)
+					+ "\t"
+					+ sizes[i]
+					+ "\t"
+					+ format(fileSizes[i])
+					+ "\t"
+					+ format(heapSizes[i])
+					+ "\t"
+					+ (heapSizes[i] < 0 || baselineHeapSize <= 0 ? "n/a" : df
+							.format((double) heapSizes[i] / baselineHeapSize)));
+		}
+		if (!tokenizer.hasHashedFeatures())
+			System.out.println("* (no quantized files, the features of the "
+					+ "model are not hashed; the heap holds the model and "
+					+ "the quantized weights)");
+		System.out.println("* ------------------------------------\n");
+	}
+
+	/**
+	 * @return the size, n/a if it is negative
+	 */
+	private static String format(long size) {
+		return size < 0 ? "n/a" : String.valueOf(size);
+	}
+
+	/**
+	 * Measures the heap used by a tokenizer which has read a model and
+	 * predicted a sentence with weights of some precision, i.e. what stays
+	 * resident of the model. The heap is measured after garbage collections,
+	 * so the size is approximate.
+	 * 
+	 * @return the size in bytes, -1 if the model cannot be read
+	 */
+	private static long getHeapSize(String modelFilename, int weightBits) {
+		long before = getUsedHeap();
+		Tokenizer tokenizer = new Tokenizer();
+		try {
+			tokenizer.readModel(modelFilename);
+		} catch (Exception e) {
+			e.printStackTrace();
+			return -1;
+		}
+		tokenizer.setWeightBits(weightBits);
+		tokenizer.predict("IL-2 gene expression.");
+		long size = getUsedHeap() - before;
+		// the tokenizer is used after the measurement, so it is not
+		// collected before
+		if (tokenizer.getWeightsSize() < 0)
+			return -1;
+		return Math.max(0, size);
+	}
+
+	private static long getUsedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		// until a collection frees no more
+		for (int i = 0; i < 10; i++) {
+			System.gc();
+			long now = runtime.totalMemory() - runtime.freeMemory();
+			if (now >= used)
+				break;
+			used = now;
+		}
+		return used;
+	}
+
+	/**
+	 * @return the size of the model as written by Tokenizer.writeModel() in
+	 *         bytes, 0 if it cannot be serialized
+	 */
+	private static long getModelSize(CRF crf) {
+		final long[] size = new long[1];
+		OutputStream counter = new OutputStream() {
+			public void write(int b) {
+				size[0]++;
+			}
+
+			public void write(byte[] b, int off, int len) {
+				size[0] += len;
+			}
+		};
+		try {
+			ObjectOutputStream oos = new ObjectOutputStream(
+					new GZIPOutputStream(counter));
+			oos.writeObject(crf);
+			oos.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return 0;
+		}
+		return size[0];
+	}
+
 	/**
 	 * check the file format
 	 * 
@@ -297,9 +903,34 @@ public class TokenizerApplication {
 	private static double doCrossEvaluation(int n, File orgSentencesFile,
 			File tokSentencesFile, ArrayList<String> errors,
 			ArrayList<String> predictions) {
+		return doCrossEvaluation(n, readFile(orgSentencesFile),
+				readFile(tokSentencesFile), null, 0, errors, predictions).ACC;
+	}
 
-		ArrayList<String> orgSentences = readFile(orgSentencesFile);
-		ArrayList<String> tokSentences = readFile(tokSentencesFile);
+	/**
+	 * perform cross validation
+	 * 
+	 * @param n
+	 *            number of splits
+	 * @param orgSentences
+	 * @param tokSentences
+	 * @param disabledTemplates
+	 *            names of the feature templates not to use, may be null
+	 * @param featureHashBits
+	 *            number of bits for feature hashing, 0 for none
+	 * @param errors
+	 * @param predictions
+	 * @return the average accuracy and model size
+	 */
+	private static EvalResult doCrossEvaluation(int n,
+			ArrayList<String> allOrgSentences,
+			ArrayList<String> allTokSentences, Set<String> disabledTemplates,
+			int featureHashBits, ArrayList<String> errors,
+			ArrayList<String> predictions) {
+
+		// the same splits on each call
+		ArrayList<String> orgSentences = new ArrayList<String>(allOrgSentences);
+		ArrayList<String> tokSentences = new ArrayList<String>(allTokSentences);
 
 		long seed = 1;
 		Collections.shuffle(orgSentences, new Random(seed));
@@ -317,6 +948,7 @@ public class TokenizerApplication {
 		EvalResult[] er = new EvalResult[n]; //
 		double avgAcc = 0;
 		double avgF = 0;
+		long avgModelSize = 0;
 
 		for (int i = 0; i < n; i++) { // in each round
 
@@ -364,25 +996,31 @@ public class TokenizerApplication {
 			System.out
 					.println("prediction size: " + predictOrgSentences.size());
 			er[i] = doEvaluation(trainOrgSentences, trainTokSentences,
-					predictOrgSentences, predictTokSentences, predictions,
-					errors);
+					predictOrgSentences, predictTokSentences,
+					disabledTemplates, featureHashBits, predictions, errors);
 		}
 
 		DecimalFormat df = new DecimalFormat("0.000");
 		for (int i = 0; i < er.length; i++) {
 			avgAcc += er[i].ACC;
 			avgF += er[i].getF();
+			avgModelSize += er[i].modelSize;
 			System.out.println("ACC in round " + i + ": "
 					+ df.format(er[i].ACC));
 		}
 		avgAcc = avgAcc / (double) n;
 		avgF = avgF / (double) n;
+		avgModelSize = avgModelSize / n;
 
 		System.out.println("\n\n------------------------------------");
 		System.out.println("avg accuracy: " + df.format(avgAcc));
 		System.out.println("avg F-score: " + df.format(avgF));
+		System.out.println("avg model size: " + avgModelSize + " bytes");
 		System.out.println("------------------------------------");
-		return avgAcc;
+		EvalResult avg = new EvalResult();
+		avg.ACC = avgAcc;
+		avg.modelSize = avgModelSize;
+		return avg;
 
 	}
 
@@ -460,6 +1098,18 @@ public class TokenizerApplication {
 
 		Tokenizer tokenizer = new Tokenizer();
 		tokenizer.setModel(crf);
+		return doEvaluation(tokenizer, predictOrgSentences,
+				predictTokSentences, errors, predictions);
+	}
+
+	/**
+	 * evaluation with the model of a tokenizer, which may be a quantized
+	 * model
+	 */
+	private static EvalResult doEvaluation(Tokenizer tokenizer,
+			ArrayList<String> predictOrgSentences,
+			ArrayList<String> predictTokSentences, ArrayList<String> errors,
+			ArrayList<String> predictions) {
 
 		// 2. prediction
 		InstanceList predData = tokenizer.makePredictionData(
@@ -587,20 +1237,44 @@ public class TokenizerApplication {
 			ArrayList<String> predictOrgSentences,
 			ArrayList<String> predictTokSentences, ArrayList<String> errors,
 			ArrayList<String> predictions) {
+		return doEvaluation(trainOrgSentences, trainTokSentences,
+				predictOrgSentences, predictTokSentences, null, 0, errors,
+				predictions);
+	}
+
+	/**
+	 * general evaluation function with a model trained without some of the
+	 * feature templates or with hashed features
+	 * 
+	 * @param disabledTemplates
+	 *            names of the feature templates not to use, may be null
+	 * @param featureHashBits
+	 *            number of bits for feature hashing, 0 for none
+	 */
+	public static EvalResult doEvaluation(ArrayList<String> trainOrgSentences,
+			ArrayList<String> trainTokSentences,
+			ArrayList<String> predictOrgSentences,
+			ArrayList<String> predictTokSentences,
+			Set<String> disabledTemplates, int featureHashBits,
+			ArrayList<String> errors, ArrayList<String> predictions) {
 
 		Tokenizer tokenizer = new Tokenizer();
 
 		// 1. training
 		InstanceList trainData = tokenizer.makeTrainingData(trainOrgSentences,
-				trainTokSentences);
+				trainTokSentences, disabledTemplates, featureHashBits);
 		Pipe myPipe = trainData.getPipe();
 
 		System.out.println("training model...");
 		tokenizer.train(trainData, myPipe);
 
-		if (true)
-			return doEvaluation(tokenizer.getModel(), predictOrgSentences,
-					predictTokSentences, errors, predictions);
+		if (true) {
+			EvalResult er = doEvaluation(tokenizer.getModel(),
+					predictOrgSentences, predictTokSentences, errors,
+					predictions);
+			er.modelSize = getModelSize(tokenizer.getModel());
+			return er;
+		}
 
 		// 2. prediction
 		InstanceList predData = tokenizer.makePredictionData(
@@ -720,6 +1394,21 @@ public class TokenizerApplication {
 	 */
 	public static void doTraining(File orgSentencesFile, File tokSentencesFile,
 			String modelFilename) {
+		doTraining(orgSentencesFile, tokSentencesFile, modelFilename, null, 0);
+	}
+
+	/**
+	 * train a model without some of the feature templates or with hashed
+	 * features
+	 * 
+	 * @param disabledTemplates
+	 *            names of the feature templates not to use, may be null
+	 * @param featureHashBits
+	 *            number of bits for feature hashing, 0 for none
+	 */
+	public static void doTraining(File orgSentencesFile, File tokSentencesFile,
+			String modelFilename, Set<String> disabledTemplates,
+			int featureHashBits) {
 
 		Tokenizer tokenizer = new Tokenizer();
 
@@ -728,7 +1417,7 @@ public class TokenizerApplication {
 
 		// get training data
 		InstanceList trainData = tokenizer.makeTrainingData(trainOrgSentences,
-				trainTokSentences);
+				trainTokSentences, disabledTemplates, featureHashBits);
 		Pipe myPipe = trainData.getPipe();
 
 		// train a model
@@ -763,75 +1452,165 @@ public class TokenizerApplication {
 		// get list of all files in directory
 		File[] predictOrgFiles = inDir.listFiles();
 
+		// reused for all windows of sentences
+		StringBuilder text = new StringBuilder();
+		StringBuilder output = new StringBuilder();
+		int[] sentences = new int[2 * Tokenizer.STREAM_WINDOW_SIZE];
+		int[] tokens = new int[0];
+
 		// loop over all files
 		for (int f = 0; f < predictOrgFiles.length; f++) {
 			long start = System.currentTimeMillis();
 
-			ArrayList<String> orgSentences = readFile(predictOrgFiles[f]);
-			ArrayList<String> tokSentences = new ArrayList<String>();
-
-			ArrayList<String> predictions = new ArrayList<String>();
-
-			// force empty labels
-			for (int j = 0; j < orgSentences.size(); j++)
-				tokSentences.add("");
-
-			// make prediction data
-			InstanceList predData = tokenizer.makePredictionData(orgSentences,
-					tokSentences);
+			String fName = predictOrgFiles[f].toString();
+			String newfName = fName.substring(fName.lastIndexOf("/") + 1,
+					fName.length());
+			File fNew = new File(outDir.toString() + "/" + newfName);
 
-			// predict
-			for (int i = 0; i < predData.size(); i++) {
-				String orgSentence = orgSentences.get(i);
-				String sentenceBoundary = orgSentence.substring(
-						orgSentence.length() - 1, orgSentence.length());
+			// the sentences are read, predicted and written window by window,
+			// so files of any size can be tokenized
+			try {
+				BufferedReader reader = new BufferedReader(new FileReader(
+						predictOrgFiles[f]));
+				FileWriter writer = new FileWriter(fNew);
+				try {
+					SentenceLines lines = new SentenceLines(reader);
+					while (lines.hasNext()) {
+						// the window is one text with a sentence per line
+						text.setLength(0);
+						int nrSentences = 0;
+						while (nrSentences < Tokenizer.STREAM_WINDOW_SIZE
+								&& lines.hasNext()) {
+							if (nrSentences > 0)
+								text.append('\n');
+							sentences[2 * nrSentences] = text.length();
+							text.append(lines.next());
+							sentences[2 * nrSentences + 1] = text.length();
+							nrSentences++;
+						}
+						if (tokens.length < 2 * text.length())
+							tokens = new int[2 * text.length()];
+						int nrTokens = tokenizer.predictTokens(text,
+								sentences, nrSentences, tokens);
+
+						output.setLength(0);
+						int t = 0;
+						for (int k = 0; k < nrSentences; k++) {
+							int end = sentences[2 * k + 1];
+							int from = t;
+							while (t < nrTokens && tokens[2 * t] < end)
+								t++;
+							appendTokenizedSentence(output, text,
+									sentences[2 * k], end, tokens, from, t);
+							output.append('\n');
+						}
+						writer.append(output);
+					}
+				} finally {
+					reader.close();
+					writer.close();
+				}
+			} catch (IOException e) {
+				System.err.println("ERR: error tokenizing file: " + fName);
+				e.printStackTrace();
+				System.exit(-1);
+			}
 
-				Instance inst = (Instance) predData.get(i);
-				List<Unit> units = null;
-				units = tokenizer.predict(inst);
+			long stop = System.currentTimeMillis();
+			System.out.println("took: " + (stop - start));
+		} // out loop over files
 
-				// ArrayList<Unit> units = (ArrayList) inst.getName();
+		System.out.println("Tokenized texts written to: " + outDir.toString());
 
-				String sentence = "";
+	}
 
-				for (int j = 0; j < units.size(); j++) {
-					String sp = (units.get(j).label.equals("P")) ? " " : "";
-					sentence += units.get(j).rep + sp;
-				}
+	/**
+	 * appends a sentence with its tokens separated by blanks; the blanks
+	 * within a token are left out. The last character is repeated as a token
+	 * of its own if it is not an EOS symbol, as JTBD always did.
+	 * 
+	 * @param text
+	 *            the text of the sentence
+	 * @param begin
+	 *            the start offset of the sentence in the text
+	 * @param end
+	 *            the end offset of the sentence in the text
+	 * @param tokens
+	 *            the offsets of the tokens of the text, see
+	 *            Tokenizer.predictTokens()
+	 * @param from
+	 *            the first token of the sentence
+	 * @param to
+	 *            the token after the sentence
+	 */
+	private static void appendTokenizedSentence(StringBuilder output,
+			CharSequence text, int begin, int end, int[] tokens, int from,
+			int to) {
+		for (int t = from; t < to; t++) {
+			if (t > from)
+				output.append(' ');
+			for (int i = tokens[2 * t]; i < tokens[2 * t + 1]; i++)
+				if (!Sentence2TokenPipe.isWhiteSpace(text.charAt(i)))
+					output.append(text.charAt(i));
+		}
+		char lastChar = text.charAt(end - 1);
+		if (!EOSSymbols.getInstance().contains(lastChar)) {
+			if (to > from)
+				output.append(' ');
+			output.append(lastChar);
+		}
+	}
 
-				if (!sentence.substring(sentence.length() - 1,
-						sentence.length()).equals(" "))
-					sentenceBoundary = " " + sentenceBoundary;
+	/**
+	 * The lines of a reader as readFile() returns them, read as they are
+	 * needed.
+	 */
+	private static class SentenceLines implements Iterator<String> {
 
-				sentence += sentenceBoundary;
-				sentence = sentence.replaceAll("[ ]+", " ");
+		private final SentenceStream.Lines lines;
 
-				predictions.add(sentence);
+		// the next line to be returned, null if not yet read
+		private String next;
 
-			}
+		SentenceLines(BufferedReader reader) {
+			lines = new SentenceStream.Lines(reader);
+		}
 
-			// write predictions into file
-			String fName = predictOrgFiles[f].toString();
-			String newfName = fName.substring(fName.lastIndexOf("/") + 1,
-					fName.length());
-			File fNew = new File(outDir.toString() + "/" + newfName);
-			writeFile(predictions, fNew);
-			// System.out.println("\ntokenized sentences written to: " +
-			// fNew.toString());
-
-			// set all arraylists to null so that GC can get them
-			orgSentences = null;
-			tokSentences = null;
-			predictions = null;
-			predData = null;
-			System.gc();
+		public boolean hasNext() {
+			while (next == null && lines.hasNext())
+				next = normalizeLine(lines.next());
+			return next != null;
+		}
 
-			long stop = System.currentTimeMillis();
-			System.out.println("took: " + (stop - start));
-		} // out loop over files
+		public String next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			String line = next;
+			next = null;
+			return line;
+		}
 
-		System.out.println("Tokenized texts written to: " + outDir.toString());
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
 
+	/**
+	 * @return the line with single blanks and without leading and trailing
+	 *         blanks, null if it is to be omitted (see readFile())
+	 */
+	private static String normalizeLine(String line) {
+		line = line.replaceAll("[ ]+", " ");
+		line = line.trim();
+		if (line.length() > 1 && !line.equals(" ")) // add only if line
+													// is not empty or
+													// does not only
+													// consist of white
+													// spaces or has at
+													// least 2
+													// characters
+			return line;
+		return null;
 	}
 
 	/**
@@ -849,17 +1628,9 @@ public class TokenizerApplication {
 			BufferedReader b = new BufferedReader(new FileReader(myFile));
 			String line = "";
 			while ((line = b.readLine()) != null) {
-				line = line.replaceAll("[ ]+", " ");
-				line = line.trim();
-				if (line.length() > 1 && !line.equals(" ")) // add only if line
-															// is not empty or
-															// does not only
-															// consist of white
-															// spaces or has at
-															// least 2
-															// characters
+				line = normalizeLine(line);
+				if (line != null)
 					lines.add(line);
-
 			}
 			b.close();
 		} catch (Exception e) {
@@ -900,6 +1671,8 @@ public class TokenizerApplication {
 		double fp;
 		double fn;
 		double corrDecisions;
+		// size of the serialized, compressed model in bytes
+		long modelSize;
 
 		double getF() {
 			return 2 * getR() * getP() / (getR() + getP());
@@ -0,0 +1,300 @@
+/**
+ * UnitBuffer.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * The units of a sentence in parallel arrays instead of Unit objects. The
+ * units refer to the sentence by their offsets, the text of a unit or
+ * super-unit is only copied when it is asked for. Labels are bytes. A
+ * buffer can be reused for the next sentence, the arrays only grow; it must
+ * not be shared by several threads.
+ **/
+
+package de.julielab.jtbd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class UnitBuffer {
+
+	/**
+	 * default label of a unit (not yet predicted)
+	 */
+	public static final byte LABEL_O = 0;
+
+	/**
+	 * the unit is the end of a token
+	 */
+	public static final byte LABEL_P = 1;
+
+	/**
+	 * the unit is not the end of a token
+	 */
+	public static final byte LABEL_N = 2;
+
+	private static final String[] LABEL_NAMES = { "O", "P", "N" };
+
+	private CharSequence text;
+
+	private int size;
+
+	private int[] begins = new int[32];
+
+	private int[] ends = new int[32];
+
+	// index of the super-unit of each unit
+	private int[] superUnits = new int[32];
+
+	private boolean[] rightWhiteSpace = new boolean[32];
+
+	private byte[] labels = new byte[32];
+
+	private int nrSuperUnits;
+
+	private int[] superUnitBegins = new int[16];
+
+	private int[] superUnitEnds = new int[16];
+
+	// the text of the super-units, made on demand
+	private String[] superUnitReps = new String[16];
+
+	// the hashes of the texts of the super-units, made on demand
+	private long[] superUnitHashes = new long[16];
+
+	private boolean[] superUnitHashed = new boolean[16];
+
+	/**
+	 * empties the buffer for the units of another text
+	 */
+	void reset(CharSequence text) {
+		this.text = text;
+		Arrays.fill(superUnitReps, 0, nrSuperUnits, null);
+		size = 0;
+		nrSuperUnits = 0;
+	}
+
+	/**
+	 * adds a super-unit
+	 *
+	 * @param rep
+	 *            the text of the super-unit if it is already known, else null
+	 * @return the index of the super-unit
+	 */
+	int addSuperUnit(int begin, int end, String rep) {
+		if (nrSuperUnits == superUnitBegins.length) {
+			int capacity = 2 * nrSuperUnits;
+			superUnitBegins = Arrays.copyOf(superUnitBegins, capacity);
+			superUnitEnds = Arrays.copyOf(superUnitEnds, capacity);
+			superUnitReps = Arrays.copyOf(superUnitReps, capacity);
+			superUnitHashes = Arrays.copyOf(superUnitHashes, capacity);
+			superUnitHashed = Arrays.copyOf(superUnitHashed, capacity);
+		}
+		superUnitBegins[nrSuperUnits] = begin;
+		superUnitEnds[nrSuperUnits] = end;
+		superUnitReps[nrSuperUnits] = rep;
+		superUnitHashed[nrSuperUnits] = false;
+		return nrSuperUnits++;
+	}
+
+	/**
+	 * adds a unit with the default label
+	 *
+	 * @param superUnit
+	 *            the index of its super-unit, see addSuperUnit()
+	 * @param hasRightWhiteSpace
+	 *            whether the unit is followed by white space
+	 */
+	void add(int begin, int end, int superUnit, boolean hasRightWhiteSpace) {
+		if (size == begins.length) {
+			int capacity = 2 * size;
+			begins = Arrays.copyOf(begins, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			superUnits = Arrays.copyOf(superUnits, capacity);
+			rightWhiteSpace = Arrays.copyOf(rightWhiteSpace, capacity);
+			labels = Arrays.copyOf(labels, capacity);
+		}
+		begins[size] = begin;
+		ends[size] = end;
+		superUnits[size] = superUnit;
+		rightWhiteSpace[size] = hasRightWhiteSpace;
+		labels[size] = LABEL_O;
+		size++;
+	}
+
+	/**
+	 * adds the units of another buffer with their labels
+	 * 
+	 * @param offset
+	 *            the offset of the text of the other buffer in the text of
+	 *            this buffer
+	 */
+	void append(UnitBuffer units, int offset) {
+		int firstSuperUnit = nrSuperUnits;
+		for (int s = 0; s < units.nrSuperUnits; s++)
+			addSuperUnit(units.superUnitBegins[s] + offset,
+					units.superUnitEnds[s] + offset, units.superUnitReps[s]);
+		for (int i = 0; i < units.size; i++) {
+			add(units.begins[i] + offset, units.ends[i] + offset,
+					units.superUnits[i] + firstSuperUnit,
+					units.rightWhiteSpace[i]);
+			labels[size - 1] = units.labels[i];
+		}
+	}
+
+	/**
+	 * @return the text the offsets refer to
+	 */
+	public CharSequence getText() {
+		return text;
+	}
+
+	/**
+	 * @return the number of units
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the start offset of the i-th unit
+	 */
+	public int getBegin(int i) {
+		return begins[i];
+	}
+
+	/**
+	 * @return the end offset of the i-th unit
+	 */
+	public int getEnd(int i) {
+		return ends[i];
+	}
+
+	/**
+	 * @return the index of the super-unit of the i-th unit, units of the same
+	 *         super-unit are adjacent
+	 */
+	public int getSuperUnit(int i) {
+		return superUnits[i];
+	}
+
+	/**
+	 * @return whether the i-th unit is followed by white space
+	 */
+	public boolean hasRightWhiteSpace(int i) {
+		return rightWhiteSpace[i];
+	}
+
+	/**
+	 * @return the label of the i-th unit, one of LABEL_O, LABEL_P and LABEL_N
+	 */
+	public byte getLabel(int i) {
+		return labels[i];
+	}
+
+	public void setLabel(int i, byte label) {
+		labels[i] = label;
+	}
+
+	/**
+	 * @return the text of the i-th unit, a copy
+	 */
+	public String getUnitRep(int i) {
+		return text.subSequence(begins[i], ends[i]).toString();
+	}
+
+	/**
+	 * @return the text of the super-unit of the i-th unit, made once per
+	 *         super-unit
+	 */
+	public String getSuperUnitRep(int i) {
+		int s = superUnits[i];
+		String rep = superUnitReps[s];
+		if (rep == null) {
+			rep = text.subSequence(superUnitBegins[s], superUnitEnds[s])
+					.toString();
+			superUnitReps[s] = rep;
+		}
+		return rep;
+	}
+
+	/**
+	 * @return the length of the text of the super-unit of the i-th unit
+	 */
+	int getSuperUnitLength(int i) {
+		int s = superUnits[i];
+		if (superUnitBegins[s] < 0)
+			return superUnitReps[s].length();
+		return superUnitEnds[s] - superUnitBegins[s];
+	}
+
+	/**
+	 * @return the hash of the text of the super-unit of the i-th unit (see
+	 *         hash()), made once per super-unit without copying the text
+	 */
+	long getSuperUnitHash(int i) {
+		int s = superUnits[i];
+		if (!superUnitHashed[s]) {
+			if (superUnitBegins[s] < 0)
+				superUnitHashes[s] = hash(superUnitReps[s], 0, superUnitReps[s]
+						.length());
+			else
+				superUnitHashes[s] = hash(text, superUnitBegins[s],
+						superUnitEnds[s]);
+			superUnitHashed[s] = true;
+		}
+		return superUnitHashes[s];
+	}
+
+	/**
+	 * @return a 64 bit hash (FNV-1a) of the characters from begin to end of a
+	 *         text
+	 */
+	static long hash(CharSequence text, int begin, int end) {
+		long hash = 0xcbf29ce484222325L;
+		for (int p = begin; p < end; p++) {
+			hash ^= text.charAt(p);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * @return the label as used by Unit ("O", "P" or "N")
+	 */
+	public static String getLabelName(byte label) {
+		return LABEL_NAMES[label];
+	}
+
+	/**
+	 * @return the label for its name as used by Unit, LABEL_O if unknown
+	 */
+	public static byte getLabel(String name) {
+		if ("P".equals(name))
+			return LABEL_P;
+		if ("N".equals(name))
+			return LABEL_N;
+		return LABEL_O;
+	}
+
+	/**
+	 * @return the units as Unit objects
+	 */
+	public List<Unit> toUnits() {
+		ArrayList<Unit> units = new ArrayList<Unit>(size);
+		for (int i = 0; i < size; i++) {
+			Unit unit = new Unit(begins[i], ends[i], getUnitRep(i),
+					getSuperUnitRep(i));
+			unit.label = LABEL_NAMES[labels[i]];
+			units.add(unit);
+		}
+		return units;
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * UnitContext.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * The context of some units of a sentence, the key of the score cache and
+ * the super-unit cache of the Tokenizer: the units together with the units
+ * next to them, each by its text, the text of its super-unit and its white
+ * space info. The features and so the scores of the units only depend on
+ * their context. A text is kept as its length and a 64 bit hash (see
+ * UnitBuffer.hash()), so no text is copied and the key of a unit does not
+ * grow with its super-unit; the hash of a super-unit is made once for all
+ * of its units. A context is set anew for each lookup, the keys put into a
+ * cache are copies.
+ **/
+
+package de.julielab.jtbd;
+
+import java.util.Arrays;
+
+final class UnitContext {
+
+	// the number of parts per unit
+	private static final int UNIT_PARTS = 3;
+
+	// whether there are units before and after the units, then for each
+	// unit: the hash of its text, the hash of the text of its super-unit
+	// and the lengths of both texts with the white space info
+	private long[] parts;
+
+	private int size;
+
+	private int hash;
+
+	UnitContext() {
+		parts = new long[1 + 3 * UNIT_PARTS];
+	}
+
+	private UnitContext(long[] parts, int hash) {
+		this.parts = parts;
+		this.size = parts.length;
+		this.hash = hash;
+	}
+
+	/**
+	 * sets the context of the units from to to
+	 *
+	 * @return this context
+	 */
+	UnitContext set(UnitBuffer units, int from, int to) {
+		boolean hasLeft = from > 0;
+		boolean hasRight = to + 1 < units.size();
+		int first = hasLeft ? from - 1 : from;
+		int last = hasRight ? to + 1 : to;
+		size = 1 + UNIT_PARTS * (last - first + 1);
+		if (size > parts.length)
+			parts = new long[Math.max(size, 2 * parts.length)];
+
+		CharSequence text = units.getText();
+		parts[0] = (hasLeft ? 2 : 0) | (hasRight ? 1 : 0);
+		int p = 1;
+		for (int j = first; j <= last; j++) {
+			int begin = units.getBegin(j);
+			int end = units.getEnd(j);
+			parts[p++] = UnitBuffer.hash(text, begin, end);
+			parts[p++] = units.getSuperUnitHash(j);
+			parts[p++] = (long) (end - begin) << 32
+					| (long) units.getSuperUnitLength(j) << 1
+					| (units.hasRightWhiteSpace(j) ? 1 : 0);
+		}
+
+		int h = 1;
+		for (int i = 0; i < size; i++)
+			h = 31 * h + (int) (parts[i] ^ (parts[i] >>> 32));
+		hash = h;
+		return this;
+	}
+
+	/**
+	 * @return a context which keeps the units of this one when it is set
+	 *         anew
+	 */
+	UnitContext copy() {
+		return new UnitContext(Arrays.copyOf(parts, size), hash);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (this == object)
+			return true;
+		if (!(object instanceof UnitContext))
+			return false;
+		UnitContext other = (UnitContext) object;
+		if (hash != other.hash || size != other.size)
+			return false;
+		for (int i = 0; i < size; i++)
+			if (parts[i] != other.parts[i])
+				return false;
+		return true;
+	}
+}
@@ -21,9 +21,9 @@
 
 package de.julielab.jules.ae;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_component.JCasAnnotator_ImplBase;
@@ -35,9 +35,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.uimafit.descriptor.ConfigurationParameter;
 
-import de.julielab.jtbd.EOSSymbols;
+import de.julielab.jtbd.Lexicon;
 import de.julielab.jtbd.Tokenizer;
-import de.julielab.jtbd.Unit;
 import de.julielab.jules.types.Sentence;
 import de.julielab.jules.types.Token;
 
@@ -54,17 +53,31 @@ public class TokenAnnotator extends JCasAnnotator_ImplBase {
 	
 	private static final String USE_DOC_TEXT_PARAM = "UseDocText";
 
+	public static final String PARAM_MAX_SENTENCE_UNITS = "MaxSentenceUnits";
+
+	public static final String PARAM_LEXICON = "LexiconFilename";
+
 	private Tokenizer tokenizer;
 		
 	private static boolean useCompleteDocText = false;
 	
-	private static EOSSymbols eosSymbols = new EOSSymbols();
-
 	private int tokenNumber; //used as token ID
 
+	// the begin and end offsets of the sentences of a document, reused for all documents
+	private int[] sentences = new int[64];
+
+	// the begin and end offsets of the tokens of a document, reused for all documents
+	private int[] tokens = new int[0];
+
 	@ConfigurationParameter(name=PARAM_MODEL,mandatory=true,description="Path to the tokenizer model.")
 	private String modelFilename;
 
+	@ConfigurationParameter(name=PARAM_MAX_SENTENCE_UNITS,mandatory=false,description="Sentences with more units are split into parts of this many units (see Tokenizer.setMaxSentenceUnits()), 0 for no limit.")
+	private int maxSentenceUnits = 0;
+
+	@ConfigurationParameter(name=PARAM_LEXICON,mandatory=false,description="Path to a lexicon of known tokens, one per line, whose boundaries are pinned before decoding (see Tokenizer.setLexicon()).")
+	private String lexiconFilename;
+
 	/**
 	 * Initialisiation of JTBD: load the model
 	 * 
@@ -99,6 +112,28 @@ public class TokenAnnotator extends JCasAnnotator_ImplBase {
 			throw new ResourceInitializationException();
 		}
 
+		// budget for pathological sentences like DNA sequences or flattened tables
+		Object maxSentenceUnitsParam = aContext.getConfigParameterValue(PARAM_MAX_SENTENCE_UNITS);
+		if (maxSentenceUnitsParam != null) {
+			maxSentenceUnits = (Integer) maxSentenceUnitsParam;
+		}
+		tokenizer.setMaxSentenceUnits(maxSentenceUnits);
+		if (maxSentenceUnits > 0) {
+			LOGGER.info("initialize() - sentences with more than " + maxSentenceUnits + " units are split");
+		}
+
+		// load lexicon of known tokens
+		lexiconFilename = (String) aContext.getConfigParameterValue(PARAM_LEXICON);
+		if (lexiconFilename != null) {
+			try {
+				tokenizer.setLexicon(Lexicon.read(lexiconFilename));
+			} catch (IOException e) {
+				LOGGER.error("initialize() - Could not load lexicon: " + e.getMessage());
+				throw new ResourceInitializationException(e);
+			}
+			LOGGER.info("initialize() - loaded lexicon with " + tokenizer.getLexicon().size() + " tokens");
+		}
+
 	}
 
 	/**
@@ -110,11 +145,22 @@ public class TokenAnnotator extends JCasAnnotator_ImplBase {
 		
 		tokenNumber = 1;
 
+		String text = aJCas.getDocumentText();
+		//skip empty input text
+		if (text == null || text.isEmpty()){
+			LOGGER.debug("process() - input for JTBD tokenizer is null or empty!");
+			return;
+		}
+
+		int nrSentences = 0;
+		int length = 0;
 		// if useCompleteDocText is true, tokenize complete documentText
 		if (useCompleteDocText){			
 			LOGGER.debug("process() - tokenizing whole document text!");		
-			String text = aJCas.getDocumentText();	
-			writeTokensToCAS(text, 0, aJCas);
+			sentences[0] = 0;
+			sentences[1] = text.length();
+			nrSentences = 1;
+			length = text.length();
 		}	
 		// if useCompleteDocText is false, tokenize sentence per sentence
 		else {
@@ -123,87 +169,51 @@ public class TokenAnnotator extends JCasAnnotator_ImplBase {
 			while (sentenceIter.hasNext()) {
 				Sentence sentence = (Sentence) sentenceIter.next();					
 				LOGGER.debug("process() - going to next sentence having length: " + (sentence.getEnd() - sentence.getBegin()));
-				String text = sentence.getCoveredText();
-				writeTokensToCAS(text, sentence.getBegin(), aJCas);
+				if (sentences.length < 2 * nrSentences + 2) {
+					sentences = Arrays.copyOf(sentences, 2 * sentences.length);
+				}
+				sentences[2 * nrSentences] = sentence.getBegin();
+				sentences[2 * nrSentences + 1] = sentence.getEnd();
+				nrSentences++;
+				length += sentence.getEnd() - sentence.getBegin();
 			}
-		}		
+		}
+
+		// predict all sentences at once and in parallel, sentences of similar length are decoded together
+		if (tokens.length < 2 * length) {
+			tokens = new int[Math.max(2 * length, 2 * tokens.length)];
+		}
+		int nrTokens;
+		long splitSentences = tokenizer.getSplitSentenceCount();
+		try {
+			nrTokens = tokenizer.predictTokens(text, sentences, nrSentences, tokens);
+		} catch (RuntimeException e) {
+			LOGGER.error("process() - could not tokenize document: " + e.getMessage());
+			throw new AnalysisEngineProcessException(e);
+		}
+		splitSentences = tokenizer.getSplitSentenceCount() - splitSentences;
+		if (splitSentences > 0) {
+			LOGGER.warn("process() - split " + splitSentences + " sentences with more than " + maxSentenceUnits + " units");
+		}
+		for (int i = 0; i < nrTokens; i++) {
+			createToken(aJCas, tokens[2 * i], tokens[2 * i + 1]);
+		}
 	}
 	
 	/**
-	 * Tokenize non empty input and write tokens to CAS by interpreting the Unit objects. JTBD splits each sentence
-	 * into several units (see Tomanek et al. Medinfo 2007 paper) and decides for each such unit whether it is at the
-	 * end of a token or not (label "N" means: not at the end, "P": at the end). Makes an extra token for terminal end
-	 * of sentence symbols.
-	 * @param text
-	 * @param offset
-	 * @param aJCas
-	 * @return
-	 * @throws AnalysisEngineProcessException
+	 * logs how often sentences were split because of their length and the
+	 * fraction of the units resolved by the lexicon
 	 */
-	private void writeTokensToCAS(String text, int offset, JCas aJCas) throws AnalysisEngineProcessException {	
-		
-		//skip empty input text
-		if (text == null || text.isEmpty()){
-			LOGGER.debug("writeTokensToCAS() - input for JTBD tokenizer is null or empty!"); 		
+	public void collectionProcessComplete() throws AnalysisEngineProcessException {
+		super.collectionProcessComplete();
+		if (maxSentenceUnits > 0) {
+			LOGGER.info("collectionProcessComplete() - split " + tokenizer.getSplitSentenceCount() + " sentences with more than " + maxSentenceUnits + " units");
 		}
-		else {
-			//if input text is not a single EOS 
-			if (text.length() > 1 || !eosSymbols.contains(text.charAt(text.length() - 1))) {	
-				LOGGER.debug("writeTokensToCAS() - tokenizing input: " + text);
-				
-				//predict units
-				List<Unit> units = tokenizer.predict(text);	
-				
-				LOGGER.debug("+++predition done!++++");
-				
-				// throw error if no units could be predicted
-				if (units == null || units.size() == 0){
-					LOGGER.error("writeTokensToCAS() - no units found by JTBD for: " + text);
-					throw new AnalysisEngineProcessException();
-				}
-				
-				int begin = 0;
-				int end = 0;
-				boolean startNewToken = true;					
-				//iterate through units, write a token whenever a unit with label 'P' signals the end of a token
-				//note that no unit exists for terminal EOS  in input text!
-				for (Unit unit : units) {					
-					if (startNewToken) { 
-						begin = unit.begin + offset;
-					}
-					end = unit.end + offset;					
-					if (unit.label.equals("N") ) {
-						startNewToken = false;
-					}
-					// write token if 'end of token' (unit with label 'P') is reached
-					else if (unit.label.equals("P")) { 
-						createToken(aJCas, begin, end);
-						startNewToken = true;
-					}
-					else {
-						LOGGER.error("writeTokensToCAS() - found unit label '" + unit.label + "' (only 'N' and 'P' are allowed");
-						throw new AnalysisEngineProcessException();
-					}
-				}
-				//This case (last unit had label 'N') should not happen. Analysis of JTBD is pending. 
-				if (!startNewToken){
-					createToken(aJCas, begin, end);
-					LOGGER.debug("writeTokensToCAS() - found terminal unit with label 'N' (expected 'P'). Check behaviour of JTBD! Token text: " +
-					aJCas.getDocumentText().subSequence(begin, end));
-					//throw new AnalysisEngineProcessException();	
-				}
-			}
-			//if last character of a sentence is a EOS, make it a separate token 
-			Character lastChar = text.charAt(text.length() - 1);	
-			if (eosSymbols.contains(lastChar)) {
-				int start = offset + text.length() - 1;
-				int end = offset + text.length();
-				createToken(aJCas, start, end);
-			}
+		if (tokenizer.getLexicon() != null) {
+			LOGGER.info("collectionProcessComplete() - units resolved by the lexicon: " + tokenizer.getLexicon());
 		}
-
 	}
-	
+
 	private void createToken(JCas jcas, int begin, int end){
 		Token annotation = new Token(jcas);
 		annotation.setBegin(begin);
@@ -0,0 +1,54 @@
+/**
+ * BoundedCacheTest.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ **/
+
+package de.julielab.jtbd;
+
+import junit.framework.TestCase;
+
+public class BoundedCacheTest extends TestCase {
+
+	public void testEvictsLeastRecentlyUsed() {
+		// small caches have a single segment, so eviction is exact LRU
+		BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(
+				3);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		cache.put("c", 3);
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		cache.put("d", 4);
+
+		assertEquals(3, cache.size());
+		assertNull(cache.get("b"));
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		assertEquals(Integer.valueOf(4), cache.get("d"));
+		assertEquals(1, cache.getEvictions());
+	}
+
+	public void testStatistics() {
+		BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(
+				1000);
+		for (int i = 0; i < 2000; i++)
+			cache.put("k" + i, i);
+		assertTrue(cache.size() <= 1000);
+		assertEquals(2000 - cache.size(), cache.getEvictions());
+
+		cache.resetStatistics();
+		cache.put("x", 1);
+		cache.get("x");
+		cache.get("x");
+		cache.get("y");
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(2.0 / 3, cache.getHitRate(), 1e-9);
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * CharClassesTest.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ **/
+
+package de.julielab.jtbd;
+
+import junit.framework.TestCase;
+
+public class CharClassesTest extends TestCase {
+
+	/**
+	 * the table must agree with the character classes it replaces for all
+	 * code points
+	 */
+	public void testAllCodePoints() {
+		String caps = "[" + Sentence2TokenPipe.CAPS + "]";
+		String low = "[" + Sentence2TokenPipe.LOW + "]";
+		for (int c = 0; c <= Character.MAX_CODE_POINT; c++) {
+			int cls = CharClasses.of(c);
+			assertEquals(Character.isLetterOrDigit(c),
+					(cls & CharClasses.LETTER_OR_DIGIT) != 0);
+			assertEquals(c == '_' || Character.isLetterOrDigit(c),
+					(cls & CharClasses.BOUNDARY_WORD) != 0);
+			assertEquals(Character.getType(c) == Character.NON_SPACING_MARK,
+					(cls & CharClasses.NON_SPACING_MARK) != 0);
+			assertEquals(Character.getType(c) == Character.DASH_PUNCTUATION,
+					(cls & CharClasses.DASH) != 0);
+			if (c > 0xff && c != 0x2028 && c != 0x2029)
+				assertEquals(0, cls
+						& ~(CharClasses.LETTER_OR_DIGIT
+								| CharClasses.BOUNDARY_WORD
+								| CharClasses.NON_SPACING_MARK | CharClasses.DASH));
+		}
+		for (char c = 0; c <= 0xff; c++) {
+			String s = String.valueOf(c);
+			int cls = CharClasses.of(c);
+			assertEquals(s.matches(caps), (cls & CharClasses.CAPS) != 0);
+			assertEquals(s.matches(low), (cls & CharClasses.LOW) != 0);
+			assertEquals(s.matches("[0-9]"), (cls & CharClasses.DIGIT) != 0);
+			assertEquals(s.matches("\\w"), (cls & CharClasses.WORD) != 0);
+			assertEquals(s.matches("[IVXDLCM]"),
+					(cls & CharClasses.ROMAN) != 0);
+			assertEquals(s.matches("\\s"),
+					(cls & CharClasses.WHITE_SPACE) != 0);
+			assertEquals(!s.matches("."),
+					(cls & CharClasses.LINE_TERMINATOR) != 0);
+		}
+	}
+
+	public void testOtherScripts() {
+		// Greek letters and mathematical alphanumerics are letters, but not
+		// CAPS or LOW, as for the trained models
+		for (int c : new int[] { '\u03b1', '\u0392', 0x1d6fc }) {
+			int cls = CharClasses.of(c);
+			assertTrue((cls & CharClasses.LETTER_OR_DIGIT) != 0);
+			assertEquals(0, cls & (CharClasses.CAPS | CharClasses.LOW));
+		}
+		assertTrue((CharClasses.of('\u2028') & CharClasses.LINE_TERMINATOR) != 0);
+	}
+}
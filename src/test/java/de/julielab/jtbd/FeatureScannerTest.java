@@ -0,0 +1,142 @@
+/**
+ * FeatureScannerTest.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ *
+ * Checks the single-pass feature scanner against the regular expressions
+ * it replaces.
+ **/
+
+package de.julielab.jtbd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class FeatureScannerTest extends TestCase {
+
+	private static final String CAPS = Sentence2TokenPipe.CAPS;
+
+	private static final String LOW = Sentence2TokenPipe.LOW;
+
+	private static final String[] SAMPLES = { "", "a", "A", "A.", "a.b.",
+			"abc.", "IL", "XIV", "a XIV-b", "_\u0300IX", "I\u0085", "10",
+			"-1,5", "1.2.3", ",5", "(a", "[b]", "a1", "1a", "protein(s)",
+			"John's", "----", "--", "a----b", "a--b", "x-->y", "-->", "+/-",
+			"CD4(+)", "(ii)", "(j)", "(vi)", "(7)", "[Ca2+]i", "w]",
+			"www.julielab.de", "(http://x)", "ftp:", "a\u2028b",
+			"\u00C1\u00E9", "\uD835\uDEFC\uD835\uDEFC/-:;." };
+
+	public void testUnitFlags() {
+		for (String s : SAMPLES) {
+			int flags = FeatureScanner.scanUnit(s);
+			check(s, flags, FeatureScanner.U_ABBR1, "[" + CAPS + "]\\.");
+			check(s, flags, FeatureScanner.U_ABBR2, "([" + CAPS + LOW
+					+ "]\\.)+");
+			check(s, flags, FeatureScanner.U_ABBR3, "[" + LOW + "]+\\.");
+			check(s, flags, FeatureScanner.U_INITCAPS, "[" + CAPS + "].*");
+			check(s, flags, FeatureScanner.U_ONECAPS, "[" + CAPS + "]");
+			check(s, flags, FeatureScanner.U_ALLCAPS, "[" + CAPS + "]+");
+			check(s, flags, FeatureScanner.U_ALPHANUMERIC, "(.*[" + CAPS
+					+ LOW + "].*[0-9].*|.*[0-9].*[" + CAPS + LOW + "].*)");
+			check(s, flags, FeatureScanner.U_ROMAN, "[IVXDLCM]+");
+			check(s, flags, FeatureScanner.U_HASROMAN,
+					".*\\b[IVXDLCM]+\\b.*");
+			check(s, flags, FeatureScanner.U_NATURALNUMBER, "[0-9]+");
+			check(s, flags, FeatureScanner.U_REALNUMBER,
+					"[-0-9]+[.,]+[0-9.,]+");
+			check(s, flags, FeatureScanner.U_HASDIGITS, ".*[0-9]+.*");
+			check(s, flags, FeatureScanner.U_BEGINBRACKETS, "(\\(.*|\\[.*)");
+		}
+	}
+
+	public void testSuperUnitFlags() {
+		for (String s : SAMPLES) {
+			int flags = FeatureScanner.scanSuperUnit(s);
+			check(s, flags, FeatureScanner.SU_IS_ALPHANUMERIC, ".*[\\w]]+.*");
+			check(s, flags, FeatureScanner.SU_HAS_ARROW, ".*-->.*");
+			check(s, flags, FeatureScanner.SU_HAS_PLUS_MINUS,
+					".*[+-]/[+-].*");
+			check(s, flags, FeatureScanner.SU_PM_WITH_BRACKETS,
+					".*\\([+-]\\).*");
+			check(s, flags, FeatureScanner.SU_IS_ENUMERATION,
+					"\\(([0-9]|[a-h]|i|ii|iii|iv|v)\\)");
+			check(s, flags, FeatureScanner.SU_HAS_BRACKETED_PLURAL,
+					".*\\(s\\)");
+			check(s, flags, FeatureScanner.SU_HAS_GENITIVE, ".*'s");
+			assertEquals(s, s.length() > 6 && s.matches("(.*[\\W].*){5,}")
+					&& !s.contains("-->"),
+					(flags & FeatureScanner.SU_IS_CHEMICAL) != 0);
+
+			// bracket, dash and URL features form else-if chains
+			assertEquals(s, firstMatch(s, "\\(.*\\)|\\[.*\\]",
+					".*\\(.*\\).*|.*\\[.*\\].*", ".*\\(.*|.*\\[.*",
+					".*\\).*|.*\\].*"), firstFlag(flags,
+					FeatureScanner.SU_IN_BRACKETS,
+					FeatureScanner.SU_HAS_CLOSED_BRACKETS,
+					FeatureScanner.SU_HAS_LEFT_BRACKET_ONLY,
+					FeatureScanner.SU_HAS_RIGHT_BRACKET_ONLY));
+			assertEquals(s, firstMatch(s, "----", ".*----.*", "--", ".*--.*"),
+					firstFlag(flags, FeatureScanner.SU_IS_DOUBLE_DASH,
+							FeatureScanner.SU_HAS_DOUBLE_DASH,
+							FeatureScanner.SU_IS_DASH,
+							FeatureScanner.SU_HAS_DASH));
+			int url = s.matches("\\(?www\\..*?\\)?") ? 0 : (s
+					.matches("\\(?http:.*?\\)?")
+					|| s.matches("\\(?ftp:.*?\\)?") ? 1 : -1);
+			assertEquals(s, url, firstFlag(flags, FeatureScanner.SU_WWW_URL,
+					FeatureScanner.SU_HTTP_URL));
+		}
+	}
+
+	public void testBriefWordClass() {
+		ArrayList<String> samples = new ArrayList<String>(Arrays
+				.asList(SAMPLES));
+		samples.add("a1b2c3d4e5f6g7h8");
+		samples.add("\u00C9cole-7\u00E9t\u00E9");
+		for (String s : samples) {
+			String bwc = s;
+			bwc = bwc.replaceAll("[A-Z]+", "A");
+			bwc = bwc.replaceAll("[a-z]+", "a");
+			bwc = bwc.replaceAll("[0-9]+", "0");
+			bwc = bwc.replaceAll("[^A-Za-z0-9]+", "x");
+			assertEquals(s, bwc, FeatureScanner.unitBriefWordClass(s));
+
+			String su_bwc = s;
+			su_bwc = su_bwc.replaceAll("[" + CAPS + "]+", "A");
+			su_bwc = su_bwc.replaceAll("[" + LOW + "]+", "a");
+			su_bwc = su_bwc.replaceAll("[0-9]+", "0");
+			su_bwc = su_bwc.replaceAll("[^" + CAPS + LOW + "0-9]+", "x");
+			assertEquals(s, su_bwc, FeatureScanner.superUnitBriefWordClass(s));
+		}
+		// short word classes are shared
+		assertSame(FeatureScanner.unitBriefWordClass("IL-2"), FeatureScanner
+				.unitBriefWordClass("CD-4"));
+	}
+
+	private void check(String s, int flags, int flag, String regex) {
+		assertEquals(s + " ~ " + regex, s.matches(regex), (flags & flag) != 0);
+	}
+
+	private int firstMatch(String s, String... regexes) {
+		for (int i = 0; i < regexes.length; i++)
+			if (s.matches(regexes[i]))
+				return i;
+		return -1;
+	}
+
+	private int firstFlag(int flags, int... candidates) {
+		for (int i = 0; i < candidates.length; i++)
+			if ((flags & candidates[i]) != 0)
+				return i;
+		return -1;
+	}
+}
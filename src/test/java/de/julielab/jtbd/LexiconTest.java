@@ -0,0 +1,94 @@
+/**
+ * LexiconTest.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ **/
+
+package de.julielab.jtbd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class LexiconTest extends TestCase {
+
+	public void testFindsOverlappingTokens() {
+		Lexicon lexicon = new Lexicon(Arrays.asList("he", "she", "his",
+				"hers", "T cell", ""));
+		// tokens with white space and empty ones are left out
+		assertEquals(4, lexicon.size());
+		assertEquals(sorted(new int[] { 1, 4, 2, 4, 2, 6 }),
+				sorted(lexicon.find("ushers")));
+		assertEquals(0, lexicon.find("T cell").length);
+	}
+
+	public void testFindsAllOccurrences() {
+		Random random = new Random(7);
+		ArrayList<String> tokens = new ArrayList<String>();
+		for (int k = 0; k < 50; k++)
+			tokens.add(randomText(random, 1 + random.nextInt(5)));
+		Lexicon lexicon = new Lexicon(tokens);
+
+		for (int k = 0; k < 100; k++) {
+			String text = randomText(random, random.nextInt(60));
+			TreeSet<String> expected = new TreeSet<String>();
+			for (String token : tokens)
+				for (int i = text.indexOf(token); i >= 0; i = text.indexOf(
+						token, i + 1))
+					expected.add(i + "-" + (i + token.length()));
+			int[] matches = lexicon.find(text);
+			TreeSet<String> actual = new TreeSet<String>();
+			for (int m = 0; m < matches.length; m += 2)
+				actual.add(matches[m] + "-" + matches[m + 1]);
+			assertEquals(expected, actual);
+		}
+	}
+
+	public void testPinsOnlyWholeWords() {
+		Lexicon lexicon = new Lexicon(Arrays.asList("IL-4"));
+		// a hyphen or dash continues the word
+		assertEquals(0, pin(lexicon, "anti-IL-4 antibodies"));
+		assertEquals(0, pin(lexicon, "IL-4-induced cells"));
+		assertEquals(0, pin(lexicon, "anti\u2013IL-4 antibodies"));
+		assertEquals(0, pin(lexicon, "IL-4R and IL-4_1"));
+		// white space, the edges and other punctuation do not
+		assertEquals(3, pin(lexicon, "IL-4"));
+		assertEquals(3, pin(lexicon, "cells (IL-4) were"));
+		assertEquals(6, pin(lexicon, "IL-4, and IL-4."));
+	}
+
+	/**
+	 * @return the number of units of a sentence pinned by a lexicon
+	 */
+	private static long pin(Lexicon lexicon, String sentence) {
+		UnitBuffer units = new UnitBuffer();
+		new Sentence2TokenPipe().makeUnits(sentence, sentence.length(), units);
+		lexicon.resetStatistics();
+		lexicon.pin(units, new boolean[units.size()]);
+		return lexicon.getPinnedUnits();
+	}
+
+	private static String randomText(Random random, int length) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			text.append("ab-1".charAt(random.nextInt(4)));
+		return text.toString();
+	}
+
+	private static String sorted(int[] matches) {
+		TreeSet<String> set = new TreeSet<String>();
+		for (int m = 0; m < matches.length; m += 2)
+			set.add(matches[m] + "-" + matches[m + 1]);
+		return set.toString();
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * NeighborConjunctionsTest.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ **/
+
+package de.julielab.jtbd;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+import cc.mallet.pipe.Pipe;
+import cc.mallet.pipe.SerialPipes;
+import cc.mallet.pipe.TokenSequence2FeatureVectorSequence;
+import cc.mallet.pipe.tsf.OffsetConjunctions;
+import cc.mallet.types.FeatureVector;
+import cc.mallet.types.FeatureVectorSequence;
+import cc.mallet.types.Instance;
+
+public class NeighborConjunctionsTest extends TestCase {
+
+	private static final String[] SENTENCES = {
+			"Interleukin-2 (IL-2) activates NF-kappaB in T-cells.",
+			"The IL-2-mediated effect (see Fig. 1a) was 2.5-fold higher.",
+			"Cells were treated with 10 mM Ca(2+), i.e. a high dose.", "" };
+
+	/**
+	 * the pipe must make the same features as OffsetConjunctions and
+	 * TokenSequence2FeatureVectorSequence
+	 */
+	public void testSameFeaturesAsOffsetConjunctions() {
+		Pipe expectedPipe = new SerialPipes(new Pipe[] {
+				new Sentence2TokenPipe(),
+				new OffsetConjunctions(new int[][] { { -1 }, { 1 } }),
+				new TokenSequence2FeatureVectorSequence(true, true) });
+		Pipe actualPipe = new SerialPipes(new Pipe[] {
+				new Sentence2TokenPipe(), new NeighborConjunctions() });
+
+		for (int round = 0; round < 2; round++) {
+			// in the second round, the alphabets do not grow any more
+			if (round == 1) {
+				expectedPipe.getDataAlphabet().stopGrowth();
+				actualPipe.getDataAlphabet().stopGrowth();
+			}
+			for (String sentence : SENTENCES) {
+				FeatureVectorSequence expected = (FeatureVectorSequence) expectedPipe
+						.instanceFrom(new Instance(sentence, null, null, ""))
+						.getData();
+				FeatureVectorSequence actual = (FeatureVectorSequence) actualPipe
+						.instanceFrom(new Instance(sentence, null, null, ""))
+						.getData();
+				assertEquals(expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); i++)
+					assertEquals(getFeatures(expected.get(i)),
+							getFeatures(actual.get(i)));
+			}
+		}
+		assertEquals(expectedPipe.getDataAlphabet().size(), actualPipe
+				.getDataAlphabet().size());
+	}
+
+	/**
+	 * with a hashed alphabet, the prediction pipe must make the same indices
+	 * as the training pipe
+	 */
+	public void testHashedFeatures() {
+		HashedAlphabet alphabet = new HashedAlphabet(12);
+		Pipe trainPipe = new SerialPipes(new Pipe[] {
+				new Sentence2TokenPipe(), new NeighborConjunctions(alphabet) });
+		assertSame(alphabet, trainPipe.getDataAlphabet());
+		Pipe predictionPipe = Sentence2FeatureVectorPipe
+				.forInputPipe(trainPipe);
+		assertNotNull(predictionPipe);
+
+		for (String sentence : SENTENCES) {
+			FeatureVectorSequence expected = (FeatureVectorSequence) trainPipe
+					.instanceFrom(new Instance(sentence, null, null, ""))
+					.getData();
+			FeatureVectorSequence actual = (FeatureVectorSequence) predictionPipe
+					.instanceFrom(new Instance(sentence, null, null, ""))
+					.getData();
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(getFeatures(expected.get(i)),
+						getFeatures(actual.get(i)));
+				for (int l = 0; l < expected.get(i).numLocations(); l++)
+					assertTrue(expected.get(i).indexAtLocation(l) < 4096);
+			}
+		}
+		assertEquals(4096, alphabet.size());
+	}
+
+	public void testDistinct() {
+		int[] buffer = { 5, 3, 5, 1, 3, 9 };
+		assertTrue(Arrays.equals(new int[] { 1, 3, 5 }, NeighborConjunctions
+				.distinct(buffer, 5)));
+	}
+
+	private TreeSet<String> getFeatures(FeatureVector fv) {
+		TreeSet<String> features = new TreeSet<String>();
+		for (int l = 0; l < fv.numLocations(); l++)
+			features.add(fv.getAlphabet().lookupObject(fv.indexAtLocation(l))
+					.toString());
+		return features;
+	}
+}
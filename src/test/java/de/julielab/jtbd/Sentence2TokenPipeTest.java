@@ -17,7 +17,15 @@
 
 package de.julielab.jtbd;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
@@ -88,4 +96,142 @@ public class Sentence2TokenPipeTest extends TestCase{
 		assertTrue(allOK);
 
 	}
+
+	public void testMakeUnitsOffsets() {
+		Sentence2TokenPipe p = new Sentence2TokenPipe();
+
+		ArrayList<Unit> testUnits = new ArrayList<Unit>();
+		ArrayList<String> wSpaces = new ArrayList<String>();
+		p.makeUnits(TEST_SENTENCE, testUnits, wSpaces);
+
+		String expectedOffsets = "0-4;5-7;10-11;14-19;20-21;21-25";
+		String expectedWSpaces = "[WS, WS, WS, WS, noWS, noWS]";
+
+		String offsets = "";
+		for (Unit unit : testUnits) {
+			offsets += (offsets.length() > 0) ? ";" : "";
+			offsets += unit.begin + "-" + unit.end;
+			assertEquals(unit.rep, TEST_SENTENCE.substring(unit.begin,
+					unit.end));
+		}
+		assertEquals(expectedOffsets, offsets);
+		assertEquals(expectedWSpaces, wSpaces.toString());
+		assertEquals("-test", testUnits.get(4).superUnitRep);
+	}
+
+	public void testMakeUnitsBuffer() {
+		Sentence2TokenPipe p = new Sentence2TokenPipe();
+		UnitBuffer buffer = new UnitBuffer();
+
+		// the buffer is reused, the second sentence is split without its
+		// final EOS symbol
+		String[] sentences = { TEST_SENTENCE, "IL-2 (see Fig. 1a) binds." };
+		int[] lengths = { TEST_SENTENCE.length(), sentences[1].length() - 1 };
+		for (int s = 0; s < sentences.length; s++) {
+			String sentence = sentences[s].substring(0, lengths[s]);
+			ArrayList<Unit> units = new ArrayList<Unit>();
+			ArrayList<String> wSpaces = new ArrayList<String>();
+			p.makeUnits(sentence, units, wSpaces);
+
+			p.makeUnits(sentences[s], lengths[s], buffer);
+			assertSame(sentences[s], buffer.getText());
+			assertEquals(units.size(), buffer.size());
+			for (int i = 0; i < units.size(); i++) {
+				assertEquals(units.get(i).begin, buffer.getBegin(i));
+				assertEquals(units.get(i).end, buffer.getEnd(i));
+				assertEquals(units.get(i).rep, buffer.getUnitRep(i));
+				assertEquals(units.get(i).superUnitRep, buffer
+						.getSuperUnitRep(i));
+				assertEquals(wSpaces.get(i).equals("WS"), buffer
+						.hasRightWhiteSpace(i));
+				assertEquals(UnitBuffer.LABEL_O, buffer.getLabel(i));
+			}
+			assertEquals(units.toString(), buffer.toUnits().toString());
+		}
+		// "(see" and "Fig." are different super-units
+		assertEquals("(see", buffer.getSuperUnitRep(3));
+		assertTrue(buffer.getSuperUnit(3) != buffer.getSuperUnit(5));
+	}
+
+	public void testMakeUnitsAndLabels() {
+		Sentence2TokenPipe p = new Sentence2TokenPipe();
+
+		String orgSentence = "IL-2 and T-cells(s)";
+		String tokSentence = "IL-2 and T-cells ( s )";
+
+		ArrayList<Unit> units = new ArrayList<Unit>();
+		ArrayList<String> labels = new ArrayList<String>();
+		ArrayList<String> wSpaces = new ArrayList<String>();
+		assertEquals(-1, p.makeUnitsAndLabels(orgSentence, tokSentence,
+				units, labels, wSpaces));
+
+		// same result as making units and labels separately
+		ArrayList<Unit> expectedUnits = new ArrayList<Unit>();
+		ArrayList<String> expectedWSpaces = new ArrayList<String>();
+		p.makeUnits(orgSentence, expectedUnits, expectedWSpaces);
+		assertEquals(expectedUnits.toString(), units.toString());
+		assertEquals(expectedWSpaces, wSpaces);
+		assertEquals(p.makeLabels(tokSentence), labels);
+
+		// the tokenized sentence does not match the original one
+		units.clear();
+		labels.clear();
+		wSpaces.clear();
+		assertEquals(10, p.makeUnitsAndLabels(orgSentence,
+				"IL-2 and Tcells ( s )", units, labels, wSpaces));
+	}
+
+	public void testDisabledTemplates() throws Exception {
+		Sentence2TokenPipe p = new Sentence2TokenPipe();
+		ArrayList<String> all = getFeatures(p, "T-cells(s)");
+
+		Set<String> disabled = new HashSet<String>(Arrays.asList("U_lex",
+				"SU_brackets"));
+		p.setDisabledTemplates(disabled);
+
+		// the choice is stored with the pipe
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(p);
+		out.close();
+		p = (Sentence2TokenPipe) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(disabled, p.getDisabledTemplates());
+
+		ArrayList<String> expected = new ArrayList<String>();
+		for (String feature : all)
+			if (!feature.startsWith("U_lex=")
+					&& !feature.equals("SU_hasClosedBrackets"))
+				expected.add(feature);
+		assertTrue(expected.size() < all.size());
+		assertEquals(expected, getFeatures(p, "T-cells(s)"));
+
+		try {
+			p.setDisabledTemplates(Collections.singleton("U_unknown"));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private ArrayList<String> getFeatures(Sentence2TokenPipe p,
+			String sentence) {
+		ArrayList<Unit> units = new ArrayList<Unit>();
+		ArrayList<String> wSpaces = new ArrayList<String>();
+		p.makeUnits(sentence, units, wSpaces);
+		final ArrayList<String> features = new ArrayList<String>();
+		Sentence2TokenPipe.FeatureSink sink = new Sentence2TokenPipe.FeatureSink() {
+			public void add(String feature) {
+				features.add(feature);
+			}
+
+			public void add(String prefix, String value) {
+				features.add(prefix + value);
+			}
+		};
+		Sentence2TokenPipe.SuperUnitFeatures superUnit = new Sentence2TokenPipe.SuperUnitFeatures();
+		for (int i = 0; i < units.size(); i++)
+			p.addFeatures(units.get(i), wSpaces.get(i), superUnit, sink);
+		return features;
+	}
 }
@@ -15,24 +15,50 @@
 
 package de.julielab.jtbd;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cc.mallet.fst.CRF;
 import cc.mallet.pipe.Pipe;
+import cc.mallet.types.FeatureVector;
+import cc.mallet.types.FeatureVectorSequence;
 import cc.mallet.types.Instance;
 import cc.mallet.types.InstanceList;
+import cc.mallet.types.Sequence;
 
 /**
  * Test for the class {@link Tokenizer}
@@ -47,7 +73,31 @@ public class TokenizerTest {
 	private static final String FILENAME_TRAIN_DATA_ORG = "src/test/resources/testdata/train/train.sent";
 	private static final String FILENAME_TRAIN_DATA_TOK = "src/test/resources/testdata/train/train.tok";
 	private static final String FILENAME_TRAIN_MODEL_OUTPUT = "/tmp/TestModelOuput.mod";
+	private static final String FILENAME_QUANTIZED_MODEL_OUTPUT = "/tmp/TestQuantizedModelOuput.mod";
 	private static final String FILENAME_ABSTRACT = "src/test/resources/test/abstract.txt";
+	private static final String FILENAME_TESTING_MODEL = "src/test/resources/models/testing.mod.gz";
+
+	// a sentence with its tokens as predicted by the testing model, which
+	// splits words from commas and parentheses as the training data does
+	private static final String TESTING_SENTENCE = "Cells were washed, stained (see text) and counted.";
+	private static final String[] TESTING_TOKENS = { "Cells", "were",
+			"washed", ",", "stained", "(", "see", "text", ")", "and",
+			"counted" };
+
+	// the training data and a tokenizer with a model of random weights,
+	// made anew for each test
+	private ArrayList<String> trainDataORG;
+	private ArrayList<String> trainDataTOK;
+	private Tokenizer tokenizer;
+	private CRF crf;
+
+	@Before
+	public void setUp() {
+		trainDataORG = readLinesFromFile(FILENAME_TRAIN_DATA_ORG);
+		trainDataTOK = readLinesFromFile(FILENAME_TRAIN_DATA_TOK);
+		tokenizer = new Tokenizer();
+		crf = makeRandomModel(tokenizer, trainDataORG, trainDataTOK);
+	}
 
 	/**
 	 * @throws Test
@@ -106,6 +156,831 @@ public class TokenizerTest {
 
 	}
 
+	/**
+	 * Test that the prediction pipe yields the same features as the input
+	 * pipe of the model
+	 */
+	@Test
+	public void testPredictionPipe() throws Exception {
+
+		Pipe trainPipe = tokenizer.makeTrainingData(trainDataORG, trainDataTOK)
+				.getPipe();
+		trainPipe.getDataAlphabet().stopGrowth();
+
+		Pipe predictionPipe = Sentence2FeatureVectorPipe
+				.forInputPipe(trainPipe);
+		assertNotNull(predictionPipe);
+
+		for (String sentence : trainDataORG) {
+			Instance expected = trainPipe.instanceFrom(new Instance(sentence,
+					null, null, ""));
+			Instance actual = predictionPipe.instanceFrom(new Instance(
+					sentence, null, null, ""));
+			FeatureVectorSequence expectedData = (FeatureVectorSequence) expected
+					.getData();
+			FeatureVectorSequence actualData = (FeatureVectorSequence) actual
+					.getData();
+			assertEquals(expected.getName().toString(), actual.getName()
+					.toString());
+			assertEquals(expected.getSource(), actual.getSource());
+			assertEquals(expectedData.size(), actualData.size());
+			for (int i = 0; i < expectedData.size(); i++)
+				assertEquals(getIndices(expectedData.get(i)),
+						getIndices(actualData.get(i)));
+		}
+	}
+
+	/**
+	 * Test that the decoder yields the same labels as CRF.transduce() for a
+	 * model with random weights
+	 */
+	@Test
+	public void testDecoder() throws Exception {
+
+		tokenizer.setConstrainedDecoding(false);
+
+		for (String sentence : trainDataORG) {
+			List<Unit> units = tokenizer.predict(sentence);
+			Sequence input = (Sequence) tokenizer.makePredictionData(
+					new StringBuffer(sentence), new StringBuffer(""))
+					.getData();
+			Sequence expected = crf.transduce(input);
+			assertEquals(expected.size(), units.size());
+			for (int i = 0; i < units.size(); i++)
+				assertEquals(expected.get(i), units.get(i).label);
+		}
+	}
+
+	/**
+	 * Test that constrained decoding labels the units followed by white space
+	 * with P, and the units between them as the best labeling of the CRF
+	 * with these labels, found by trying all labels of each segment
+	 */
+	@Test
+	public void testConstrainedDecoding() throws Exception {
+
+		assertTrue(tokenizer.isConstrainedDecoding());
+
+		int nrBoundaries = 0;
+		for (String sentence : trainDataORG) {
+			UnitBuffer units = new UnitBuffer();
+			tokenizer.predict(sentence, units);
+			FeatureVectorSequence data = (FeatureVectorSequence) tokenizer
+					.makePredictionData(new StringBuffer(sentence),
+							new StringBuffer("")).getData();
+			int n = units.size();
+			assertEquals(n, data.size());
+
+			int from = 0;
+			for (int i = 0; i < n; i++) {
+				boolean boundary = units.hasRightWhiteSpace(i);
+				if (boundary) {
+					assertEquals(UnitBuffer.LABEL_P, units.getLabel(i));
+					nrBoundaries++;
+				}
+				if (boundary || i == n - 1) {
+					String[] expected = getBestLabels(data, from, i, boundary);
+					for (int j = from; j <= i; j++)
+						assertEquals(sentence + " @" + j, expected[j - from],
+								UnitBuffer.getLabelName(units.getLabel(j)));
+					from = i + 1;
+				}
+			}
+		}
+		// each sentence has white space
+		assertTrue(nrBoundaries >= trainDataORG.size());
+	}
+
+	/**
+	 * Test that the testing model predicts the expected tokens with and
+	 * without constraints
+	 */
+	@Test
+	public void testConstrainedDecodingTestingModel() throws Exception {
+
+		Tokenizer tokenizer = readTestingModel();
+		for (boolean constrained : new boolean[] { true, false }) {
+			tokenizer.setConstrainedDecoding(constrained);
+			UnitBuffer units = new UnitBuffer();
+			tokenizer.predict(TESTING_SENTENCE, units);
+			assertEquals(Arrays.asList(TESTING_TOKENS), getTokens(units));
+		}
+	}
+
+	/**
+	 * Test that constrained decoding makes the same critical decisions (the
+	 * labels of the units not followed by white space, but the last one) as
+	 * unconstrained decoding whenever that labels the units followed by
+	 * white space P
+	 */
+	@Test
+	public void testConstrainedDecodingAgrees() throws Exception {
+
+
+		// the sentences and their parts of two and three words, few of the
+		// whole sentences are labeled P at all white space
+		ArrayList<String> sentences = new ArrayList<String>();
+		for (String sentence : trainDataORG) {
+			sentences.add(sentence);
+			String[] words = sentence.split(" ");
+			for (int k = 0; k + 1 < words.length; k++) {
+				sentences.add(words[k] + " " + words[k + 1]);
+				if (k + 2 < words.length)
+					sentences.add(words[k] + " " + words[k + 1] + " "
+							+ words[k + 2]);
+			}
+		}
+
+		int agreeing = 0;
+		for (String sentence : sentences) {
+			UnitBuffer constrained = new UnitBuffer();
+			tokenizer.predict(sentence, constrained);
+			tokenizer.setConstrainedDecoding(false);
+			UnitBuffer unconstrained = new UnitBuffer();
+			tokenizer.predict(sentence, unconstrained);
+			tokenizer.setConstrainedDecoding(true);
+
+			int n = constrained.size();
+			boolean unconstrainedHasBoundaries = true;
+			for (int i = 0; i < n; i++)
+				if (unconstrained.hasRightWhiteSpace(i))
+					unconstrainedHasBoundaries &= unconstrained.getLabel(i) == UnitBuffer.LABEL_P;
+			if (!unconstrainedHasBoundaries)
+				continue;
+			agreeing++;
+			for (int i = 0; i < n - 1; i++)
+				if (!unconstrained.hasRightWhiteSpace(i))
+					assertEquals(sentence + " @" + i, unconstrained
+							.getLabel(i), constrained.getLabel(i));
+			// the label of the last unit is decoded, too
+			assertEquals(unconstrained.getLabel(n - 1), constrained
+					.getLabel(n - 1));
+		}
+		assertTrue(agreeing > 0);
+	}
+
+	/**
+	 * Test that labels taken from the super-unit cache are the same as those
+	 * decoded without it
+	 */
+	@Test
+	public void testSuperUnitCache() throws Exception {
+
+		Tokenizer cached = new Tokenizer();
+		cached.setModel(crf);
+		cached.setSuperUnitCacheSize(1000);
+
+		for (int round = 0; round < 2; round++) {
+			for (String sentence : trainDataORG) {
+				List<Unit> expected = tokenizer.predict(sentence);
+				List<Unit> actual = cached.predict(sentence);
+				assertEquals(expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); i++)
+					assertEquals(expected.get(i).label, actual.get(i).label);
+			}
+		}
+		BoundedCache<?, byte[]> cache = cached.getSuperUnitCache();
+		assertTrue(cache.size() > 0);
+		assertEquals(cache.size(), cache.getMisses());
+		assertTrue(cache.getHits() >= cache.getMisses());
+	}
+
+	/**
+	 * Test that a single tokenizer predicts the same labels when it is used
+	 * by many threads at once, in all prediction methods and with caches
+	 * that evict entries all the time
+	 */
+	@Test
+	public void testConcurrentPrediction() throws Exception {
+
+		tokenizer.setScoreCacheSize(64);
+		tokenizer.setSuperUnitCacheSize(16);
+
+		// the expected labels, by a tokenizer used by this thread only
+		Tokenizer single = new Tokenizer();
+		single.setModel(crf);
+		final ArrayList<String> sentences = trainDataORG;
+		final ArrayList<List<Unit>> expected = new ArrayList<List<Unit>>();
+		for (String sentence : sentences)
+			expected.add(single.predict(sentence));
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		ArrayList<Future<Integer>> errors = new ArrayList<Future<Integer>>();
+		for (int t = 0; t < 16; t++) {
+			final Random random = new Random(t);
+			errors.add(executor.submit(new Callable<Integer>() {
+				public Integer call() {
+					UnitBuffer units = new UnitBuffer();
+					UnitBuffer[] batch = new UnitBuffer[2];
+					int nrErrors = 0;
+					for (int round = 0; round < 4 * sentences.size(); round++) {
+						int k = random.nextInt(sentences.size());
+						String sentence = sentences.get(k);
+						List<Unit> actual;
+						switch (random.nextInt(4)) {
+						case 0:
+							actual = tokenizer.predict(sentence);
+							break;
+						case 1:
+							actual = tokenizer.predict(tokenizer
+									.makePredictionData(
+											new StringBuffer(sentence),
+											new StringBuffer("")));
+							break;
+						case 2:
+							tokenizer.predict(sentence, units);
+							actual = units.toUnits();
+							break;
+						default:
+							int other = random.nextInt(sentences.size());
+							tokenizer.predict(Arrays.asList(sentence,
+									sentences.get(other)), batch);
+							actual = batch[0].toUnits();
+							if (!sameLabels(expected.get(other), batch[1]
+									.toUnits()))
+								nrErrors++;
+						}
+						if (!sameLabels(expected.get(k), actual))
+							nrErrors++;
+					}
+					return nrErrors;
+				}
+			}));
+		}
+		executor.shutdown();
+		for (Future<Integer> e : errors)
+			assertEquals(0, e.get().intValue());
+	}
+
+	private boolean sameLabels(List<Unit> expected, List<Unit> actual) {
+		if (expected.size() != actual.size())
+			return false;
+		for (int i = 0; i < expected.size(); i++)
+			if (!expected.get(i).label.equals(actual.get(i).label))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Test that predicting several sentences at once yields the same labels
+	 * as predicting them one by one
+	 */
+	@Test
+	public void testPredictBatch() throws Exception {
+
+
+		ArrayList<String> sentences = new ArrayList<String>(trainDataORG);
+		sentences.add("");
+		sentences.add(".");
+		UnitBuffer[] units = new UnitBuffer[sentences.size()];
+		tokenizer.predict(sentences, units);
+		for (int k = 0; k < sentences.size(); k++) {
+			List<Unit> expected = tokenizer.predict(sentences.get(k));
+			assertEquals(expected.size(), units[k].size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).begin, units[k].getBegin(i));
+				assertEquals(expected.get(i).label, UnitBuffer
+						.getLabelName(units[k].getLabel(i)));
+			}
+		}
+	}
+
+	/**
+	 * Test that the testing model predicts the expected tokens of sentences
+	 * of different lengths predicted together, at once and in parallel
+	 */
+	@Test
+	public void testPredictBatchTestingModel() throws Exception {
+
+		Tokenizer tokenizer = readTestingModel();
+		List<String> sentences = Arrays.asList("Cells were counted.",
+				TESTING_SENTENCE, "", TESTING_SENTENCE.replace(".",
+						", washed and counted."));
+		List<List<String>> expected = new ArrayList<List<String>>();
+		expected.add(Arrays.asList("Cells", "were", "counted"));
+		expected.add(Arrays.asList(TESTING_TOKENS));
+		expected.add(new ArrayList<String>());
+		List<String> tokens = new ArrayList<String>(Arrays
+				.asList(TESTING_TOKENS));
+		tokens.addAll(Arrays.asList(",", "washed", "and", "counted"));
+		expected.add(tokens);
+
+		UnitBuffer[] units = new UnitBuffer[sentences.size()];
+		tokenizer.predict(sentences, units);
+		for (int k = 0; k < sentences.size(); k++)
+			assertEquals(expected.get(k), getTokens(units[k]));
+		units = tokenizer.predictAll(sentences);
+		for (int k = 0; k < sentences.size(); k++)
+			assertEquals(expected.get(k), getTokens(units[k]));
+	}
+
+	/**
+	 * Test that predicting sentences in parallel yields the same labels in
+	 * the same order as predicting them one by one, with the threads of the
+	 * tokenizer, a thread pool and an executor which rejects all tasks
+	 */
+	@Test
+	public void testPredictAll() throws Exception {
+
+
+		ArrayList<String> sentences = new ArrayList<String>();
+		for (int k = 0; k < 5; k++)
+			sentences.addAll(trainDataORG);
+		sentences.add("");
+		Collections.shuffle(sentences, new Random(1));
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		Executor rejecting = new Executor() {
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException();
+			}
+		};
+
+		for (Executor executor : new Executor[] { null, pool, rejecting }) {
+			UnitBuffer[] units = tokenizer.predictAll(sentences, executor);
+			assertEquals(sentences.size(), units.length);
+			for (int k = 0; k < sentences.size(); k++) {
+				List<Unit> expected = tokenizer.predict(sentences.get(k));
+				assertEquals(expected.size(), units[k].size());
+				assertTrue(sameLabels(expected, units[k].toUnits()));
+			}
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Test that a stream of sentences is predicted line by line as the single
+	 * sentences are, across several windows
+	 */
+	@Test
+	public void testPredictStream() throws Exception {
+
+
+		ArrayList<String> sentences = new ArrayList<String>(trainDataORG);
+		sentences.add(3, "");
+		StringBuilder text = new StringBuilder();
+		for (String sentence : sentences)
+			text.append(sentence).append('\n');
+
+		ArrayList<Iterator<UnitBuffer>> streams = new ArrayList<Iterator<UnitBuffer>>();
+		streams.add(tokenizer.predictStream(sentences.iterator(), 3));
+		streams.add(tokenizer.predictStream(new StringReader(text.toString())));
+		streams.add(tokenizer.predictStream(Channels
+				.newChannel(new ByteArrayInputStream(text.toString().getBytes(
+						"UTF-8"))), "UTF-8"));
+		for (Iterator<UnitBuffer> units : streams) {
+			for (String sentence : sentences) {
+				assertTrue(units.hasNext());
+				UnitBuffer actual = units.next();
+				assertEquals(sentence, actual.getText().toString());
+				assertTrue(sameLabels(tokenizer.predict(sentence), actual
+						.toUnits()));
+			}
+			assertFalse(units.hasNext());
+		}
+	}
+
+	/**
+	 * Test that predictTokens() finds the tokens of the units predicted for
+	 * each sentence, with a token for a final EOS symbol
+	 */
+	@Test
+	public void testPredictTokens() throws Exception {
+
+
+		ArrayList<String> sentences = new ArrayList<String>(trainDataORG);
+		sentences.add(3, "");
+		sentences.add(5, ".");
+		StringBuilder text = new StringBuilder();
+		int[] offsets = new int[2 * sentences.size()];
+		ArrayList<Integer> expected = new ArrayList<Integer>();
+		for (int k = 0; k < sentences.size(); k++) {
+			String sentence = sentences.get(k);
+			text.append("  ");
+			offsets[2 * k] = text.length();
+			text.append(sentence);
+			offsets[2 * k + 1] = text.length();
+
+			int begin = -1;
+			List<Unit> units = sentence.length() > 1 ? tokenizer
+					.predict(sentence) : new ArrayList<Unit>();
+			for (int i = 0; i < units.size(); i++) {
+				if (begin < 0)
+					begin = units.get(i).begin;
+				if ("P".equals(units.get(i).label) || i == units.size() - 1) {
+					expected.add(offsets[2 * k] + begin);
+					expected.add(offsets[2 * k] + units.get(i).end);
+					begin = -1;
+				}
+			}
+			if (sentence.length() > 0
+					&& EOSSymbols.getInstance().contains(
+							sentence.charAt(sentence.length() - 1))) {
+				expected.add(offsets[2 * k + 1] - 1);
+				expected.add(offsets[2 * k + 1]);
+			}
+		}
+
+		int[] tokens = new int[2 * text.length()];
+		int nrTokens = tokenizer.predictTokens(text, offsets,
+				sentences.size(), tokens);
+		assertEquals(expected.size() / 2, nrTokens);
+		for (int t = 0; t < expected.size(); t++)
+			assertEquals((int) expected.get(t), tokens[t]);
+
+		try {
+			tokenizer.predictTokens(text, offsets, sentences.size(),
+					new int[nrTokens]);
+			fail("the token buffer is too small");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * Test that a long text decoded in chunks gets the same labels as if it
+	 * was decoded at once
+	 */
+	@Test
+	public void testChunkedDecoding() throws Exception {
+
+
+		StringBuilder text = new StringBuilder();
+		for (String sentence : trainDataORG)
+			text.append(sentence).append(' ');
+		UnitBuffer expected = new UnitBuffer();
+		tokenizer.setChunkSize(0);
+		tokenizer.predict(text, expected);
+
+		for (int chunkSize : new int[] { 1, 50 }) {
+			tokenizer.setChunkSize(chunkSize);
+			UnitBuffer actual = new UnitBuffer();
+			tokenizer.predict(text, actual);
+			assertTrue(expected.size() > chunkSize);
+			assertTrue(sameLabels(expected.toUnits(), actual.toUnits()));
+		}
+	}
+
+	/**
+	 * Test that a sentence with more units than the budget is split into
+	 * parts, each ending a token, and counted
+	 */
+	@Test
+	public void testMaxSentenceUnits() throws Exception {
+
+
+		StringBuilder sentence = new StringBuilder(trainDataORG.get(0));
+		sentence.append(' ');
+		for (int i = 0; i < 30; i++)
+			sentence.append("(CH2)-");
+		sentence.append(" end.");
+		UnitBuffer whole = new UnitBuffer();
+		tokenizer.predict(sentence, whole);
+
+		tokenizer.setMaxSentenceUnits(20);
+		UnitBuffer units = new UnitBuffer();
+		tokenizer.predict("IL-2 is expressed in T-cells.", units);
+		assertEquals(0, tokenizer.getSplitSentenceCount());
+		tokenizer.predict(sentence, units);
+		assertEquals(1, tokenizer.getSplitSentenceCount());
+
+		assertEquals(whole.size(), units.size());
+		int partSize = 0;
+		for (int i = 0; i < units.size(); i++) {
+			assertEquals(whole.getBegin(i), units.getBegin(i));
+			assertEquals(whole.getEnd(i), units.getEnd(i));
+			if (++partSize == 20)
+				assertEquals(UnitBuffer.LABEL_P, units.getLabel(i));
+			if (units.getLabel(i) == UnitBuffer.LABEL_P)
+				partSize = 0;
+		}
+
+		// a deserialized tokenizer counts anew
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(tokenizer);
+		out.close();
+		Tokenizer copy = (Tokenizer) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(0, copy.getSplitSentenceCount());
+		copy.predict(sentence, units);
+		assertEquals(1, copy.getSplitSentenceCount());
+		assertEquals(1, tokenizer.getSplitSentenceCount());
+	}
+
+	/**
+	 * Test that the tokens of a lexicon are found as tokens, whatever the
+	 * model predicts, and that the pinned units are counted
+	 */
+	@Test
+	public void testLexicon() throws Exception {
+
+		tokenizer.setLexicon(new Lexicon(Arrays.asList("IL-2", "GM-CSF")));
+
+		String sentence = "IL-2 and GM-CSF(IL-2)induce IL-2R.";
+		UnitBuffer units = new UnitBuffer();
+		tokenizer.predict(sentence, units);
+		String[] tokens = new String[] { "IL-2", "GM-CSF", "IL-2" };
+		int[] begins = new int[] { 0, 9, 16 };
+		for (int k = 0; k < tokens.length; k++) {
+			int end = begins[k] + tokens[k].length();
+			for (int i = 0; i < units.size(); i++) {
+				if (units.getEnd(i) == begins[k])
+					assertEquals(UnitBuffer.LABEL_P, units.getLabel(i));
+				if (units.getBegin(i) >= begins[k] && units.getEnd(i) < end)
+					assertEquals(UnitBuffer.LABEL_N, units.getLabel(i));
+				if (units.getEnd(i) == end)
+					assertEquals(UnitBuffer.LABEL_P, units.getLabel(i));
+			}
+		}
+
+		// IL-2 in IL-2R is part of a longer word
+		Lexicon lexicon = tokenizer.getLexicon();
+		assertEquals(units.size(), lexicon.getUnits());
+		assertTrue(lexicon.getPinnedUnits() >= 9);
+		assertTrue(lexicon.getPinnedUnits() < lexicon.getUnits());
+	}
+
+	/**
+	 * Test that the testing model predicts a token of the lexicon as one
+	 * token, but not within a hyphenated compound
+	 */
+	@Test
+	public void testLexiconTestingModel() throws Exception {
+
+		Tokenizer tokenizer = readTestingModel();
+		String compound = "The anti-IL-4 antibodies were counted.";
+		UnitBuffer expected = new UnitBuffer();
+		tokenizer.predict(compound, expected);
+		tokenizer.setLexicon(new Lexicon(Arrays.asList("IL-4")));
+
+		UnitBuffer units = new UnitBuffer();
+		tokenizer.predict("Cells were stained (IL-4), washed and counted.",
+				units);
+		assertEquals(Arrays.asList("Cells", "were", "stained", "(", "IL-4",
+				")", ",", "washed", "and", "counted"), getTokens(units));
+		tokenizer.predict(compound, units);
+		assertEquals(getTokens(expected), getTokens(units));
+	}
+
+	/**
+	 * Test that only a model with hashed features is written with quantized
+	 * weights, and that the written model predicts as the model with weights
+	 * of that precision and is smaller than the model and than the model
+	 * written with more precision
+	 */
+	@Test
+	public void testQuantizedModel() throws Exception {
+
+		try {
+			tokenizer.writeQuantizedModel(FILENAME_QUANTIZED_MODEL_OUTPUT, 8);
+			fail("the features of the model are not hashed");
+		} catch (IllegalStateException e) {
+		}
+
+		makeRandomModel(tokenizer, tokenizer.makeTrainingData(trainDataORG,
+				trainDataTOK, null, 18));
+		long size = tokenizer.getWeightsSize();
+		tokenizer.writeModel(FILENAME_TRAIN_MODEL_OUTPUT);
+		long fileSize = new File(FILENAME_TRAIN_MODEL_OUTPUT + ".gz").length();
+
+		for (int weightBits : new int[] { 32, 8 }) {
+			tokenizer.writeQuantizedModel(FILENAME_QUANTIZED_MODEL_OUTPUT,
+					weightBits);
+			long quantizedFileSize = new File(FILENAME_QUANTIZED_MODEL_OUTPUT
+					+ ".gz").length();
+			assertTrue(quantizedFileSize < fileSize);
+			fileSize = quantizedFileSize;
+
+			Tokenizer quantized = new Tokenizer();
+			quantized.readModel(FILENAME_QUANTIZED_MODEL_OUTPUT + ".gz");
+			assertNull(quantized.getModel());
+			tokenizer.setWeightBits(weightBits);
+			assertEquals(tokenizer.getWeightsSize(), quantized
+					.getWeightsSize());
+			// the rows of the features with a weight are not quantized
+			assertTrue(quantized.getWeightsSize() < size);
+			size = quantized.getWeightsSize();
+
+			for (String sentence : trainDataORG) {
+				List<Unit> expected = tokenizer.predict(sentence);
+				List<Unit> actual = quantized.predict(sentence);
+				assertEquals(expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); i++)
+					assertEquals(expected.get(i).label, actual.get(i).label);
+			}
+		}
+	}
+
+	/**
+	 * Test that the testing model predicts the expected tokens with weights
+	 * of each precision
+	 */
+	@Test
+	public void testQuantizedTestingModel() throws Exception {
+
+		Tokenizer tokenizer = readTestingModel();
+		for (int weightBits : new int[] { Decoder.FLOAT_BITS,
+				Decoder.BYTE_BITS }) {
+			tokenizer.setWeightBits(weightBits);
+			UnitBuffer units = new UnitBuffer();
+			tokenizer.predict(TESTING_SENTENCE, units);
+			assertEquals(Arrays.asList(TESTING_TOKENS), getTokens(units));
+		}
+	}
+
+	/**
+	 * Test that the decoder of a model with the most hash bits only keeps
+	 * the weights of the features with a weight, and that it scores as the
+	 * CRF does
+	 */
+	@Test
+	public void testHashedModel() throws Exception {
+
+		InstanceList trainData = tokenizer.makeTrainingData(trainDataORG,
+				trainDataTOK, null, HashedAlphabet.MAX_BITS);
+		crf = makeRandomModel(tokenizer, trainData);
+		// less than a byte per feature index
+		assertTrue(tokenizer.getWeightsSize() < 1L << HashedAlphabet.MAX_BITS);
+
+		Decoder decoder = new Decoder(crf);
+		CRF.Factors parameters = crf.getParameters();
+		for (Instance inst : trainData) {
+			FeatureVectorSequence data = (FeatureVectorSequence) inst
+					.getData();
+			for (int i = 0; i < data.size(); i++) {
+				double[] scores = decoder.score(data.get(i));
+				int t = 0;
+				for (int s = 0; s < crf.numStates(); s++) {
+					CRF.State state = (CRF.State) crf.getState(s);
+					for (int d = 0; d < state.numDestinations(); d++, t++) {
+						double expected = 0;
+						for (String name : state.getWeightNames(d)) {
+							int w = parameters.weightAlphabet.lookupIndex(
+									name, false);
+							expected += parameters.weights[w]
+									.dotProduct(data.get(i))
+									+ parameters.defaultWeights[w];
+						}
+						assertEquals(expected, scores[t], 1e-9);
+					}
+				}
+			}
+		}
+
+		tokenizer.setWeightBits(8);
+		assertTrue(tokenizer.getWeightsSize() < 1L << HashedAlphabet.MAX_BITS);
+		for (String sentence : trainDataORG)
+			assertFalse(tokenizer.predict(sentence).isEmpty());
+	}
+
+	/**
+	 * @return the labels of the units from to to with the best score of the
+	 *         model, found with a lattice of all states: after a unit
+	 *         labeled P if from is not the first unit, labeling to P if
+	 *         endsWithP
+	 */
+	private String[] getBestLabels(FeatureVectorSequence data, int from,
+			int to, boolean endsWithP) {
+		int length = to - from + 1;
+		int numStates = crf.numStates();
+		// the best scores of the states before the units and at each unit,
+		// and the best previous state of each
+		double[][] scores = new double[length + 1][numStates];
+		int[][] previous = new int[length + 1][numStates];
+		for (int s = 0; s < numStates; s++) {
+			CRF.State state = (CRF.State) crf.getState(s);
+			if (from == 0)
+				scores[0][s] = state.getInitialWeight();
+			else
+				scores[0][s] = "P".equals(state.getName()) ? 0
+						: Double.NEGATIVE_INFINITY;
+		}
+		for (int k = 1; k <= length; k++) {
+			for (int d = 0; d < numStates; d++) {
+				scores[k][d] = Double.NEGATIVE_INFINITY;
+				for (int s = 0; s < numStates; s++) {
+					double score = scores[k - 1][s]
+							+ getTransitionScore((CRF.State) crf.getState(s),
+									d, data.get(from + k - 1));
+					if (score > scores[k][d]) {
+						scores[k][d] = score;
+						previous[k][d] = s;
+					}
+				}
+			}
+		}
+
+		int best = -1;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int s = 0; s < numStates; s++) {
+			CRF.State state = (CRF.State) crf.getState(s);
+			if (endsWithP && !"P".equals(state.getName()))
+				continue;
+			double score = scores[length][s];
+			if (to == data.size() - 1)
+				score += state.getFinalWeight();
+			if (score > bestScore) {
+				bestScore = score;
+				best = s;
+			}
+		}
+		String[] labels = new String[length];
+		for (int k = length; k > 0; k--) {
+			labels[k - 1] = crf.getState(best).getName();
+			best = previous[k][best];
+		}
+		return labels;
+	}
+
+	/**
+	 * @return the score of the transition from a state to a state at a
+	 *         position, as the CRF computes it
+	 */
+	private double getTransitionScore(CRF.State source, int destination,
+			FeatureVector fv) {
+		CRF.Factors parameters = crf.getParameters();
+		for (int d = 0; d < source.numDestinations(); d++) {
+			if (source.getDestinationState(d).getIndex() != destination)
+				continue;
+			double score = 0;
+			for (String name : source.getWeightNames(d)) {
+				int w = parameters.weightAlphabet.lookupIndex(name, false);
+				score += parameters.weights[w].dotProduct(fv)
+						+ parameters.defaultWeights[w];
+			}
+			return score;
+		}
+		return Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * sets a model with the states of the training data and random weights
+	 */
+	private CRF makeRandomModel(Tokenizer tokenizer,
+			ArrayList<String> orgSentences, ArrayList<String> tokSentences) {
+		return makeRandomModel(tokenizer, tokenizer.makeTrainingData(
+				orgSentences, tokSentences));
+	}
+
+	/**
+	 * sets a model with the states of some training data and random weights
+	 */
+	private CRF makeRandomModel(Tokenizer tokenizer, InstanceList trainData) {
+		trainData.getPipe().getDataAlphabet().stopGrowth();
+
+		CRF crf = new CRF(trainData.getPipe(), null);
+		crf.addStatesForLabelsConnectedAsIn(trainData);
+		crf.setWeightsDimensionAsIn(trainData, false);
+		Random random = new Random(1);
+		CRF.Factors parameters = crf.getParameters();
+		for (int w = 0; w < parameters.weights.length; w++) {
+			for (int l = 0; l < parameters.weights[w].numLocations(); l++)
+				parameters.weights[w].setValueAtLocation(l, random
+						.nextGaussian());
+			parameters.defaultWeights[w] = random.nextGaussian();
+		}
+		for (int s = 0; s < crf.numStates(); s++) {
+			crf.getState(s).setInitialWeight(random.nextGaussian());
+			crf.getState(s).setFinalWeight(random.nextGaussian());
+		}
+		tokenizer.setModel(crf);
+		return crf;
+	}
+
+	/**
+	 * @return a tokenizer with the model trained on the training data
+	 */
+	private Tokenizer readTestingModel() throws Exception {
+		Tokenizer tokenizer = new Tokenizer();
+		tokenizer.readModel(FILENAME_TESTING_MODEL);
+		return tokenizer;
+	}
+
+	/**
+	 * @return the tokens of some labeled units, without a final EOS symbol
+	 */
+	private List<String> getTokens(UnitBuffer units) {
+		ArrayList<String> tokens = new ArrayList<String>();
+		int begin = -1;
+		for (int i = 0; i < units.size(); i++) {
+			if (begin < 0)
+				begin = units.getBegin(i);
+			if (units.getLabel(i) == UnitBuffer.LABEL_P
+					|| i == units.size() - 1) {
+				tokens.add(units.getText().subSequence(begin,
+						units.getEnd(i)).toString());
+				begin = -1;
+			}
+		}
+		return tokens;
+	}
+
+	private TreeSet<Integer> getIndices(FeatureVector fv) {
+		TreeSet<Integer> indices = new TreeSet<Integer>();
+		for (int l = 0; l < fv.numLocations(); l++)
+			indices.add(fv.indexAtLocation(l));
+		return indices;
+	}
+
 	private ArrayList<String> readLinesFromFile(String filename) {
 		ArrayList<String> list = new ArrayList<String>();
 		File file = new File(filename);
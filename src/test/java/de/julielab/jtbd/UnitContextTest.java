@@ -0,0 +1,63 @@
+/**
+ * UnitContextTest.java
+ *
+ * Copyright (c) 2006, JULIE Lab.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Common Public License v1.0
+ *
+ * Current version: 2.6
+ * Since version:   2.6
+ *
+ * Creation date: Oct 17, 2026
+ **/
+
+package de.julielab.jtbd;
+
+import junit.framework.TestCase;
+
+public class UnitContextTest extends TestCase {
+
+	public void testSameUnitsInOtherSentences() {
+		UnitBuffer first = makeUnits("IL-2 gene");
+		UnitBuffer second = makeUnits("the IL-2 gene");
+		// "-" with "IL" and "2" in the super-unit "IL-2"
+		UnitContext context = new UnitContext().set(first, 1, 1);
+		assertEquals(context, new UnitContext().set(second, 2, 2));
+		assertEquals(context.hashCode(), new UnitContext().set(second, 2, 2)
+				.hashCode());
+		// the units of the super-unit, preceded by "the" in both
+		assertEquals(new UnitContext().set(second, 1, 3), new UnitContext()
+				.set(makeUnits("a the IL-2 gene"), 2, 4));
+		assertFalse(new UnitContext().set(first, 0, 2).equals(
+				new UnitContext().set(second, 1, 3)));
+	}
+
+	public void testOtherContexts() {
+		UnitBuffer units = makeUnits("IL-2 gene");
+		UnitContext context = new UnitContext().set(units, 2, 2);
+		// "2" without a right neighbor
+		assertFalse(context.equals(new UnitContext().set(makeUnits("IL-2"),
+				2, 2)));
+		// "2" in another super-unit
+		assertFalse(context.equals(new UnitContext().set(
+				makeUnits("IL-2a gene"), 2, 2)));
+		// "2" followed by a unit without white space
+		assertFalse(context.equals(new UnitContext().set(
+				makeUnits("IL-2-gene"), 2, 2)));
+	}
+
+	public void testCopyKeepsUnits() {
+		UnitBuffer units = makeUnits("IL-2 gene");
+		UnitContext context = new UnitContext().set(units, 1, 1);
+		UnitContext copy = context.copy();
+		context.set(units, 3, 3);
+		assertEquals(new UnitContext().set(units, 1, 1), copy);
+		assertFalse(copy.equals(context));
+	}
+
+	private static UnitBuffer makeUnits(String sentence) {
+		UnitBuffer units = new UnitBuffer();
+		new Sentence2TokenPipe().makeUnits(sentence, sentence.length(), units);
+		return units;
+	}
+}